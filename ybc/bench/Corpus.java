@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Synthetic .yb sources made of what the parser handles today:
+ * expression statements, blocks and comments.
+ */
+public final class Corpus {
+    private static final HashMap<String, String> cache = new HashMap<>();
+    private static final String[] OPS = {
+        "+", "-", "*", "/", "**", "<<", ">>>", "&", "~|", "^", "==", "<=",
+        "&&", "!||", "+=", "=", ":=",
+    };
+
+    private Corpus() {}
+
+    // size is 1KB, 1MB or 100MB.
+    public static synchronized String of(String size) {
+        return cache.computeIfAbsent(size, (s) -> generate(bytes(s)));
+    }
+
+    private static int bytes(String size) {
+        int n = Integer.parseInt(size.substring(0, size.length() - 2));
+        return switch (size.substring(size.length() - 2)) {
+            case "KB" -> n << 10;
+            case "MB" -> n << 20;
+            default -> throw new IllegalArgumentException("unknown size \"" + size + "\".");
+        };
+    }
+
+    private static String generate(int bytes) {
+        Random random = new Random(bytes);
+        StringBuilder sb = new StringBuilder(bytes + 128);
+        while (sb.length() < bytes) {
+            switch (random.nextInt(8)) {
+                case 0 -> sb.append("// value ").append(random.nextInt(1000)).append(" of the thing\n");
+                case 1 -> {
+                    sb.append("{\n");
+                    for (int i = random.nextInt(4); i >= 0; i--) {
+                        sb.append("    ");
+                        statement(sb, random);
+                    }
+                    sb.append("}\n");
+                }
+                default -> statement(sb, random);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void statement(StringBuilder sb, Random random) {
+        sb.append("value_").append(random.nextInt(64));
+        for (int i = random.nextInt(6); i >= 0; i--) {
+            sb.append(' ').append(OPS[random.nextInt(OPS.length)]).append(' ');
+            switch (random.nextInt(5)) {
+                case 0 -> sb.append(random.nextInt(100000)).append("ul");
+                case 1 -> sb.append("(a").append(random.nextInt(8)).append(" + 3.14e-2)");
+                case 2 -> sb.append("f(x, y").append(random.nextInt(8)).append(")[i]");
+                case 3 -> sb.append("(-!b").append(random.nextInt(8)).append("++)");
+                default -> sb.append("name_").append(random.nextInt(256));
+            }
+        }
+        sb.append(";\n");
+    }
+}
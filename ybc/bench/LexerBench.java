@@ -0,0 +1,43 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import src.lexer.Lexer;
+
+// tokens/sec is the `tokens` counter, add `-prof gc` for the allocation rate.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LexerBench {
+    @Param({"1KB", "1MB", "100MB"})
+    public String size;
+    private String source;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long tokens;
+    }
+
+    @Setup
+    public void setup() {
+        source = Corpus.of(size);
+    }
+
+    @Benchmark
+    public int lex(Counters counters) throws Exception {
+        var lexer = new Lexer(source, "<bench>");
+        int n = 0;
+        while (lexer.hasNext()) {
+            lexer.nextToken();
+            n++;
+        }
+        counters.tokens += n;
+        return n;
+    }
+}
@@ -0,0 +1,67 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import src.parser.Node;
+import src.parser.Node.*;
+import src.parser.Parser;
+
+// nodes/sec is the `nodes` counter, add `-prof gc` for the allocation rate.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class ParserBench {
+    @Param({"1KB", "1MB", "100MB"})
+    public String size;
+    private String source;
+    private long nodes;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long nodes;
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        source = Corpus.of(size);
+        var res = new Parser(source, "<bench>").parseProgram();
+        if (res.hasError())
+            throw res.getError();
+        nodes = count(res.getValue());
+    }
+
+    @Benchmark
+    public Program parseProgram(Counters counters) throws Exception {
+        var res = new Parser(source, "<bench>").parseProgram();
+        counters.nodes += nodes;
+        return res.getValue();
+    }
+
+    private static long count(Node node) {
+        long n = 1;
+        if (node instanceof Program program)
+            for (var stmt : program.body())
+                n += count(stmt);
+        else if (node instanceof BlockStmt block)
+            for (var stmt : block.stmts())
+                n += count(stmt);
+        else if (node instanceof ExprStmt stmt)
+            n += count(stmt.expr());
+        else if (node instanceof BinOpExpr expr)
+            n += count(expr.left()) + count(expr.right());
+        else if (node instanceof UnaryOpExpr expr)
+            n += count(expr.expr());
+        else if (node instanceof MethodCallExpr expr) {
+            n += count(expr.fn());
+            for (var arg : expr.args())
+                n += count(arg);
+        }
+        return n;
+    }
+}
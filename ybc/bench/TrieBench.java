@@ -0,0 +1,50 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import src.parser.Trie;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieBench {
+    private static final String[] OPERATORS = {
+        ":", ".", "=", "<=>", ":=",
+        "||=", "!||=", "&&=", "!&&=", "^^=", "!^^=",
+        "**=", "*=", "/=", "+=", "-=", "|=",
+        "~|=", "&=", "~&=", "^=", "~^=",
+        "<<=", ">>=", "<<<=", ">>>=",
+        "++", "--", "!", "~",
+        "==", "!=", "<=", ">=", "<", ">",
+        "||", "!||", "&&", "!&&", "^^", "!^^",
+        "**", "*", "/", "+", "-",
+        "|", "~|", "&", "~&", "^", "~^",
+        "<<", ">>", "<<<", ">>>",
+    };
+    private Trie trie;
+
+    @Param({"+", "<<<=", "!^^", "<<x"})
+    public String pattern;
+
+    @Setup
+    public void setup() {
+        trie = new Trie();
+        for (var op : OPERATORS)
+            trie.add(op);
+    }
+
+    @Benchmark
+    public boolean match() {
+        return trie.match(pattern);
+    }
+
+    @Benchmark
+    public int longestMatch() {
+        return trie.longestMatch(pattern);
+    }
+}
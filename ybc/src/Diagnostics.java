@@ -0,0 +1,113 @@
+package src;
+
+import java.util.Arrays;
+
+import src.lexer.Token;
+import src.lexer.TokenType;
+import src.lexer.exception.LexerException;
+
+/**
+ * Errors of a compilation, kept as a code, a detail and the position of
+ * the token, in arrays sized up front. Messages are only rendered when
+ * asked for. Reports past the capacity are counted, but not kept.
+ */
+public final class Diagnostics {
+    public static enum Code {
+        UNEXPECTED_EOS("unexpected EOS."),
+        EXPECTED_EOS("unexpected EOS (expected %s)."),
+        EXPECTED("unexpected token (expected %s)."),
+        UNEXPECTED_TOKEN("unexpected token."),
+        UNEXPECTED_OPERATOR("unexpected operator."),
+        EXPECTED_BACKTICK("expected \"`\", got \"%s\"."),
+        UNKNOWN_ESCAPE("unknown escape sequence: \"%s\"."),
+        EXPECTED_BASE("0x, 0o, or 0b expected, got unknown \"%s\"."),
+        ;
+
+        private final String format;
+
+        private Code(String format) {
+            this.format = format;
+        }
+
+        // an array detail is a list, eg. the token types that were expected.
+        public String render(final Object detail) {
+            if (!format.contains("%s"))
+                return format;
+            if (!(detail instanceof Object[] list))
+                return format.formatted(detail);
+            var s = new StringBuilder();
+            for (int i = 0; i < list.length; i++)
+                s.append(i > 0 ? ", " : "").append(list[i]);
+            return format.formatted(s);
+        }
+    }
+
+    private static final Code[] CODES = Code.values();
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final byte[] codes;
+    private final Object[] details;
+    private final String[] sources, images;
+    // -1 for errors without a token, eg. at the end of the source.
+    private final byte[] types;
+    private final int[] lines, columns;
+    private int size, dropped;
+
+    public Diagnostics(final int capacity) {
+        codes = new byte[capacity];
+        details = new Object[capacity];
+        sources = new String[capacity];
+        images = new String[capacity];
+        types = new byte[capacity];
+        lines = new int[capacity];
+        columns = new int[capacity];
+    }
+
+    /** Records an error, false if there's no room left for it. */
+    public boolean report(final Code code, final Object detail, final String source, final Token tok) {
+        if (size == codes.length) {
+            dropped++;
+            return false;
+        }
+        codes[size] = (byte)code.ordinal();
+        details[size] = detail;
+        sources[size] = source;
+        if (tok == null) {
+            types[size] = -1;
+            images[size] = null;
+            lines[size] = columns[size] = 0;
+        } else {
+            types[size] = (byte)tok.getType().ordinal();
+            images[size] = tok.getImage();
+            lines[size] = tok.getLine();
+            columns[size] = tok.getColumn();
+        }
+        size++;
+        return true;
+    }
+
+    public int size() { return size; }
+    public int dropped() { return dropped; }
+    public boolean isEmpty() { return size == 0 && dropped == 0; }
+
+    public Code code(final int i) { return CODES[codes[i]]; }
+    public Object detail(final int i) { return details[i]; }
+    public String source(final int i) { return sources[i]; }
+    public int line(final int i) { return lines[i]; }
+    public int column(final int i) { return columns[i]; }
+    public TokenType type(final int i) { return types[i] < 0 ? null : TYPES[types[i]]; }
+    public String image(final int i) { return images[i]; }
+
+    /** The message of the i-th error, as a {@link LexerException} would have it. */
+    public String message(final int i) {
+        return LexerException.format(sources[i], code(i).render(details[i]),
+            type(i), lines[i], columns[i], images[i]);
+    }
+
+    public void clear() {
+        Arrays.fill(details, 0, size, null);
+        Arrays.fill(sources, 0, size, null);
+        Arrays.fill(images, 0, size, null);
+        size = dropped = 0;
+    }
+}
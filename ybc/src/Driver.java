@@ -0,0 +1,99 @@
+package src;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+import src.lexer.Lexer;
+import src.lexer.TokenBuffer;
+import src.parser.Node.Program;
+import src.parser.ParseCache;
+import src.parser.SplitParser;
+
+/**
+ * Compiles many sources at once, one task per file on a work-stealing pool,
+ * big files are split further, see {@link SplitParser}.
+ * Every file gets its own Lexer, Parser and SymbolTable, nothing is shared
+ * between tasks but the parser's immutable static tables.
+ */
+public final class Driver {
+    public static final String EXTENSION = ".yb";
+
+    private Driver() {}
+
+    /**
+     * The .yb files of the given paths, directories are walked recursively.
+     */
+    public static List<Path> sources(final Collection<Path> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (var path : paths) {
+            if (!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+            try (Stream<Path> walk = Files.walk(path)) {
+                walk.filter((p) -> p.toString().endsWith(EXTENSION) && Files.isRegularFile(p))
+                    .sorted()
+                    .forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    public static Map<Path, Result<Program, Exception>> compile(final Collection<Path> paths) throws IOException {
+        return compile(paths, ForkJoinPool.commonPool(), null);
+    }
+
+    /**
+     * Parses every source of {@code paths} on {@code pool}, the results are
+     * in the order of {@link #sources(Collection)}. Unchanged sources are
+     * loaded from {@code cache} when there's one.
+     */
+    public static Map<Path, Result<Program, Exception>> compile(final Collection<Path> paths, final ForkJoinPool pool, final ParseCache cache) throws IOException {
+        List<Path> files = sources(paths);
+        // the biggest files go first, so they don't end up alone at the tail.
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++)
+            order.add(i);
+        long[] sizes = new long[files.size()];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = size(files.get(i));
+        order.sort(Comparator.comparingLong((Integer i) -> sizes[i]).reversed());
+
+        // each file's task at its index, submitted in that order.
+        List<ForkJoinTask<Result<Program, Exception>>> tasks = new ArrayList<>(Collections.nCopies(files.size(), null));
+        for (int i : order)
+            tasks.set(i, pool.submit(() -> cache != null ? cache.parse(files.get(i)) : parse(files.get(i))));
+
+        Map<Path, Result<Program, Exception>> map = new LinkedHashMap<>();
+        for (int i = 0; i < files.size(); i++)
+            map.put(files.get(i), tasks.get(i).join());
+        return map;
+    }
+
+    public static Result<Program, Exception> parse(final Path file) {
+        try {
+            return SplitParser.parse(new TokenBuffer(new Lexer(file)));
+        } catch (Exception e) {
+            return Result.ofError(e);
+        }
+    }
+
+    private static long size(final Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -1,12 +1,20 @@
 package src;
 
-import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 import src.lexer.Lexer;
+import src.parser.ParseCache;
 import src.parser.Parser;
 
 public class Main {
-    static void main(String[] args) {
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            compile(args);
+            return;
+        }
         Scanner sc = new Scanner(System.in);
         System.out.println("Yb REPL");
         String in = "";
@@ -14,7 +22,7 @@ public class Main {
             System.out.print("> ");
             in = sc.nextLine();
             try {
-                var res = new Parser(new StringReader(in), "<stdin>")
+                var res = new Parser(in, "<stdin>")
                     .parseProgram();
                 if (res.hasError())
                     res.getError().printStackTrace();
@@ -24,7 +32,7 @@ public class Main {
             } catch (Exception e) {
                 System.err.println(e.getMessage());
             }
-            /*var lexer = new Lexer(new StringReader(in), "<stdin>");
+            /*var lexer = new Lexer(in, "<stdin>");
             while (lexer.hasNext()) {
                 var res = lexer.next();
                 if (res.hasError())
@@ -35,4 +43,29 @@ public class Main {
         }
         sc.close();
     }
+
+    // yb [--cache=dir] <file.yb | dir>... parses every source in parallel, see Driver.
+    private static void compile(String[] args) {
+        List<Path> paths = new ArrayList<>();
+        String cache = null;
+        for (var arg : args) {
+            if (arg.startsWith("--cache="))
+                cache = arg.substring("--cache=".length());
+            else
+                paths.add(Path.of(arg));
+        }
+        try {
+            var results = Driver.compile(paths, ForkJoinPool.commonPool(),
+                cache == null ? null : new ParseCache(Path.of(cache)));
+            for (var entry : results.entrySet()) {
+                var res = entry.getValue();
+                if (res.hasError())
+                    System.err.println(entry.getKey() + ": " + res.getError().getMessage());
+                else
+                    System.out.println(res.getValue());
+            }
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        }
+    }
 }
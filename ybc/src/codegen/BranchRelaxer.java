@@ -0,0 +1,69 @@
+package src.codegen;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static src.codegen.Opcode.*;
+
+/**
+ * Shrinks the branches of emitted code to their 1-byte forms where the
+ * target is close enough. The emitter writes every branch as its 2-byte
+ * {@code _s} form, this starts from all of them being short and widens the
+ * ones whose target falls out of range, until nothing changes. A branch
+ * that was widened stays wide, so it always ends.
+ * <p>
+ * A pass is linear in the number of branches: where a position moves to is
+ * the bytes saved by the short branches before it, a prefix sum. Most code
+ * settles in one or two passes.
+ */
+final class BranchRelaxer {
+    // from a 2-byte branch to its 1-byte form.
+    private static final int NARROW = GOTO_S.ordinal() - GOTO.ordinal();
+    private static final Opcode[] OPCODES = Opcode.values();
+
+    private BranchRelaxer() {}
+
+    /**
+     * The first {@code size} bytes of {@code code}, with the {@code n}
+     * branches at {@code at}, in order, jumping to {@code to}, which has
+     * {@code before} branches before it.
+     */
+    static ByteBuffer relax(final ByteBuffer code, final int size, final int[] at, final int[] to, final int[] before, final int n) throws Exception {
+        boolean[] wide = new boolean[n];
+        int[] saved = new int[n + 1];
+        boolean changed = true;
+        while (changed) {
+            for (int i = 0; i < n; i++)
+                saved[i + 1] = saved[i] + (wide[i] ? 0 : 1);
+            changed = false;
+            for (int i = 0; i < n; i++) {
+                if (wide[i])
+                    continue;
+                int distance = (to[i] - saved[before[i]]) - (at[i] - saved[i]);
+                if (distance != (byte)distance)
+                    changed = wide[i] = true;
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocateDirect(size - saved[n]).order(ByteOrder.BIG_ENDIAN);
+        int from = 0, pos = 0;
+        for (int i = 0; i < n; i++) {
+            out.put(pos, code, from, at[i] - from);
+            pos += at[i] - from;
+            int distance = (to[i] - saved[before[i]]) - (at[i] - saved[i]);
+            Opcode op = OPCODES[code.get(at[i])];
+            if (wide[i]) {
+                if (distance != (short)distance)
+                    throw new Exception("branch at " + pos + " is too far from its target.");
+                out.put(pos, op.code()).putShort(pos + 1, (short)distance);
+                pos += 3;
+            } else {
+                out.put(pos, OPCODES[op.ordinal() - NARROW].code()).put(pos + 1, (byte)distance);
+                pos += 2;
+            }
+            from = at[i] + 1 + op.operand;
+        }
+        out.put(pos, code, from, size - from);
+        return out;
+    }
+}
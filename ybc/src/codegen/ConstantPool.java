@@ -0,0 +1,130 @@
+package src.codegen;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The constants instructions refer to by their 16-bit constid. Every
+ * constant is kept once, found again through an open-addressing table,
+ * and ids are handed out in the order constants are first asked for.
+ * <p>
+ * A type refers to its name and a member to its owner type and its name,
+ * by id, so their parts are shared with every other use.
+ */
+public final class ConstantPool {
+    public static final byte STRING = 1, INTEGER = 2, FLOATING = 3, TYPE = 4, MEMBER = 5;
+    public static final int LIMIT = 1 << 16;
+
+    private byte[] tags = new byte[64];
+    // a number, the bits of a double, or the ids a type or member refers to.
+    private long[] values = new long[64];
+    private String[] strings = new String[64];
+    private byte[][] utf8 = new byte[64][];
+    private int size;
+    // id + 1 by hash, 0 is a free slot. Kept at most half full.
+    private int[] table = new int[128];
+
+    public int string(final String s) throws Exception {
+        return add(STRING, 0, s);
+    }
+
+    public int integer(final long v) throws Exception {
+        return add(INTEGER, v, null);
+    }
+
+    // by bits, so 0.0 and -0.0 are two constants and NaN is one.
+    public int floating(final double v) throws Exception {
+        return add(FLOATING, Double.doubleToRawLongBits(v), null);
+    }
+
+    public int type(final String name) throws Exception {
+        return add(TYPE, string(name), null);
+    }
+
+    public int member(final String owner, final String name) throws Exception {
+        int type = type(owner);
+        return add(MEMBER, (long)type << 16 | string(name), null);
+    }
+
+    public int size() { return size; }
+    public byte tag(final int id) { return tags[id]; }
+    public long value(final int id) { return values[id]; }
+    public String text(final int id) { return strings[id]; }
+
+    /**
+     * The size of the constpool section: a u4 count, then per constant its
+     * tag and a u4 length and UTF-8 bytes for a string, a u8 for a number,
+     * a u2 name for a type, or a u2 type and a u2 name for a member.
+     */
+    public int byteSize() {
+        int n = 4;
+        for (int i = 0; i < size; i++)
+            n += 1 + switch (tags[i]) {
+                case STRING -> 4 + utf8[i].length;
+                case INTEGER, FLOATING -> 8;
+                case TYPE -> 2;
+                default -> 4;
+            };
+        return n;
+    }
+
+    /** Writes the constpool section, {@link #byteSize()} bytes. */
+    public void write(final ByteBuffer out) {
+        out.putInt(size);
+        for (int i = 0; i < size; i++) {
+            out.put(tags[i]);
+            switch (tags[i]) {
+                case STRING -> out.putInt(utf8[i].length).put(utf8[i]);
+                case INTEGER, FLOATING -> out.putLong(values[i]);
+                case TYPE -> out.putShort((short)values[i]);
+                default -> out.putShort((short)(values[i] >>> 16)).putShort((short)values[i]);
+            }
+        }
+    }
+
+    private int add(byte tag, long value, String s) throws Exception {
+        int mask = table.length - 1;
+        int i = hash(tag, value, s) & mask;
+        for (int id; (id = table[i]) != 0; i = (i + 1) & mask) {
+            id--;
+            if (tags[id] == tag && values[id] == value && (s == null || s.equals(strings[id])))
+                return id;
+        }
+        if (size == LIMIT)
+            throw new Exception("too many constants, the pool holds " + LIMIT + ".");
+        if (size == tags.length) {
+            tags = Arrays.copyOf(tags, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            strings = Arrays.copyOf(strings, size * 2);
+            utf8 = Arrays.copyOf(utf8, size * 2);
+        }
+        tags[size] = tag;
+        values[size] = value;
+        strings[size] = s;
+        if (s != null)
+            utf8[size] = s.getBytes(StandardCharsets.UTF_8);
+        table[i] = ++size;
+        if (size * 2 > table.length)
+            rehash();
+        return size - 1;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int i = hash(tags[id], values[id], strings[id]) & mask;
+            while (table[i] != 0)
+                i = (i + 1) & mask;
+            table[i] = id + 1;
+        }
+    }
+
+    private static int hash(byte tag, long value, String s) {
+        long h = (value + tag) * 0x9e3779b97f4a7c15L;
+        if (s != null)
+            h ^= s.hashCode() * 0xc2b2ae3d27d4eb4fL;
+        return (int)(h ^ h >>> 29 ^ h >>> 47);
+    }
+}
@@ -0,0 +1,543 @@
+package src.codegen;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import src.Result;
+import src.parser.NumberValue;
+
+import static src.codegen.Opcode.*;
+import static src.parser.Node.*;
+
+/**
+ * Lowers a {@link Program} into the file of bytecode.template: the header,
+ * the constant pool, the classes and the program's code, big endian. Code
+ * goes to a direct buffer that grows as needed. Literals and locals get
+ * the shortest instruction that holds them.
+ * <p>
+ * Locals are slots handed out by symbol id, in the order they're first
+ * seen. A branch operand is the signed distance from the branch's opcode
+ * to its target, {@code if_e} jumps when the value it pops is zero.
+ * Branches are written in their 2-byte form and shrunk afterwards, see
+ * {@link BranchRelaxer}.
+ * A call to a name is an {@code invokestatic} of a member of the empty
+ * type, the top level, and leaves its result on the stack.
+ */
+public final class Emitter {
+    public static final int MAGIC = 0x59415641; // YAVA
+    public static final short MAJOR = 0, MINOR = 1;
+    // u4 signature, u2 major, u2 minor and the three u64 offsets.
+    public static final int HEADER = 32;
+    // how deep statements and expressions may nest, past chains of operators.
+    public static final int MAX_NESTING = 1000;
+
+    private ByteBuffer buf = ByteBuffer.allocateDirect(1 << 12).order(ByteOrder.BIG_ENDIAN);
+    private final ConstantPool pool = new ConstantPool();
+    // symbol id -> slot + 1, 0 if it has none yet.
+    private int[] slots = new int[64];
+    private int locals;
+    // label -> position in buf, -1 until placed, and the branches before it.
+    private int[] labels = new int[16], labelJumps = new int[16];
+    private int labelCount;
+    // every branch: the position of its opcode and its label.
+    private int[] jumps = new int[16], targets = new int[16];
+    private int jumpCount;
+    // the labels of the loops around, innermost last.
+    private int[] continues = new int[8], breaks = new int[8];
+    private int loops;
+    // statements and expressions being emitted, see enter().
+    private int nesting;
+
+    private Emitter() {}
+
+    public static Result<ByteBuffer, Exception> emit(final Program program) {
+        try {
+            return Result.ofValue(new Emitter().run(program));
+        } catch (Exception e) {
+            return Result.ofError(e);
+        }
+    }
+
+    private ByteBuffer run(Program program) throws Exception {
+        for (var stmt : program.body())
+            stmt(stmt);
+        op(PUSH_0Z);
+        op(EXIT);
+        int[] to = new int[jumpCount], before = new int[jumpCount];
+        for (int i = 0; i < jumpCount; i++) {
+            to[i] = labels[targets[i]];
+            before[i] = labelJumps[targets[i]];
+        }
+        ByteBuffer body = BranchRelaxer.relax(buf, buf.position(), jumps, to, before, jumpCount);
+        // the code refers to the pool, so the file is put together last.
+        int constpool = HEADER, classdef = constpool + pool.byteSize(), code = classdef + 2;
+        ByteBuffer file = ByteBuffer.allocateDirect(code + body.limit()).order(ByteOrder.BIG_ENDIAN);
+        file.putInt(MAGIC).putShort(MAJOR).putShort(MINOR)
+            .putLong(constpool).putLong(classdef).putLong(code);
+        pool.write(file);
+        file.putShort((short)0); // no classes yet
+        file.put(body);
+        return file.flip();
+    }
+
+    private void stmt(Stmt stmt) throws Exception {
+        if (stmt instanceof EmptyStmt)
+            return;
+        enter();
+        if (stmt instanceof ExprStmt n)
+            expr(n.expr(), false);
+        else if (stmt instanceof BlockStmt n) {
+            for (var s : n.stmts())
+                stmt(s);
+        } else if (stmt instanceof IfStmt n) {
+            int otherwise = label();
+            branchIfFalse(n.condition(), otherwise);
+            stmt(n.body());
+            if (n.otherwise() == null)
+                place(otherwise);
+            else {
+                int end = label();
+                jump(GOTO_S, end);
+                place(otherwise);
+                stmt(n.otherwise());
+                place(end);
+            }
+        } else if (stmt instanceof LoopStmt n) {
+            int start = label(), end = label();
+            place(start);
+            if (n.condition() != null)
+                branchIfFalse(n.condition(), end);
+            if (loops == breaks.length) {
+                continues = Arrays.copyOf(continues, loops * 2);
+                breaks = Arrays.copyOf(breaks, loops * 2);
+            }
+            continues[loops] = start;
+            breaks[loops++] = end;
+            stmt(n.body());
+            loops--;
+            jump(GOTO_S, start);
+            place(end);
+        } else if (stmt instanceof BreakStmt n) {
+            if (n.value() != null)
+                throw cantEmit(n);
+            if (loops == 0)
+                throw new Exception("break outside of a loop.");
+            jump(GOTO_S, breaks[loops - 1]);
+        } else if (stmt instanceof ContinueStmt n) {
+            if (n.value() != null)
+                throw cantEmit(n);
+            if (loops == 0)
+                throw new Exception("continue outside of a loop.");
+            jump(GOTO_S, continues[loops - 1]);
+        } else if (stmt instanceof ReturnStmt n) {
+            value(n.value());
+            op(RET);
+        } else if (stmt instanceof ImplReturnStmt n) {
+            value(n.value());
+            op(RET);
+        } else
+            throw cantEmit(stmt);
+        nesting--;
+    }
+
+    // what's being emitted is one level deeper. An error aborts the emit,
+    // so only the way out of a level that's done has to leave it.
+    private void enter() throws Exception {
+        if (++nesting > MAX_NESTING)
+            throw new Exception("nested more than " + MAX_NESTING + " deep to emit.");
+    }
+
+    // !c branches on c itself, the other way around.
+    private void branchIfFalse(Expr condition, int label) throws Exception {
+        if (condition instanceof UnaryOpExpr n && n.op() == Op.Not) {
+            value(n.expr());
+            jump(IF_NE_S, label);
+        } else {
+            value(condition);
+            jump(IF_E_S, label);
+        }
+    }
+
+    // leaves the value of e on the stack, or nothing unless `value`.
+    private void expr(Expr e, boolean value) throws Exception {
+        enter();
+        if (e instanceof BinOpExpr n && n.op() == Op.Declare) {
+            if (value)
+                throw cantEmit(e);
+            slot(target(n));
+        } else if (e instanceof BinOpExpr n && (n.op() == Op.Swap || base(n.op()) != null)) {
+            assign(n, value);
+        } else if (e instanceof UnaryOpExpr n && step(n.op()) != null) {
+            IdentifierL id = target(n.expr());
+            int slot = slot(id);
+            getl(slot);
+            boolean post = n.op() == Op.PostInc || n.op() == Op.PostDec;
+            if (value && post)
+                op(DUP);
+            op(PUSH_1Z);
+            op(step(n.op()));
+            if (value && !post)
+                duput(slot);
+            else
+                putl(slot);
+        } else if (e instanceof IfExpr n) {
+            int otherwise = label(), end = label();
+            branchIfFalse(n.condition(), otherwise);
+            expr(n.body(), value);
+            jump(GOTO_S, end);
+            place(otherwise);
+            expr(n.otherwise(), value);
+            place(end);
+        } else {
+            value(e);
+            if (!value)
+                op(POP);
+        }
+        nesting--;
+    }
+
+    private void assign(BinOpExpr n, boolean value) throws Exception {
+        if (n.op() == Op.Swap) {
+            if (value)
+                throw cantEmit(n);
+            int a = slot(target(n.left())), b = slot(target(n.right()));
+            getl(a);
+            getl(b);
+            putl(a);
+            putl(b);
+            return;
+        }
+        if (n.op() == Op.Assign && n.left() instanceof BinOpExpr arr && arr.op() == Op.ArrIndex) {
+            if (value)
+                throw cantEmit(n);
+            value(arr.left());
+            value(arr.right());
+            value(n.right());
+            op(PUTARR);
+            return;
+        }
+        int slot = slot(target(n.left()));
+        Op base = base(n.op());
+        if (base != Op.Assign) {
+            getl(slot);
+            value(n.right());
+            op(binary(base));
+        } else
+            value(n.right());
+        if (value)
+            duput(slot);
+        else
+            putl(slot);
+    }
+
+    // operators are emitted off a stack of the operands still to be
+    // evaluated and the instructions that follow them, so a long chain
+    // can't overflow whichever side it nests on.
+    private void value(Expr e) throws Exception {
+        enter();
+        if (!chained(e)) {
+            term(e);
+            nesting--;
+            return;
+        }
+        var work = new ArrayDeque<Object>();
+        work.push(e);
+        while (!work.isEmpty()) {
+            Object item = work.pop();
+            if (item instanceof Opcode op) {
+                op(op);
+                continue;
+            }
+            var x = (Expr)item;
+            if (!chained(x))
+                term(x);
+            else if (x instanceof UnaryOpExpr n) {
+                if (n.op() != Op.Pass)
+                    work.push(n.op() == Op.Negative ? NEG : n.op() == Op.Not ? NOT : BNOT);
+                work.push(n.expr());
+            } else {
+                var n = (BinOpExpr)x;
+                if (n.op() == Op.Mul && n.left() == n.right()) {
+                    // the same node twice, a reduced x ** 2, is evaluated once.
+                    work.push(MUL);
+                    work.push(DUP);
+                } else {
+                    work.push(n.op() == Op.ArrIndex ? GETARR : binary(n.op()));
+                    work.push(n.right());
+                }
+                work.push(n.left());
+            }
+        }
+        nesting--;
+    }
+
+    // an operator that's its operands' values and an instruction.
+    private static boolean chained(Expr e) {
+        if (e instanceof UnaryOpExpr n)
+            return switch (n.op()) {
+                case Negative -> !(n.expr() instanceof NumberL);
+                case Not, BwNot, Pass -> true;
+                default -> false;
+            };
+        return e instanceof BinOpExpr n && (n.op() == Op.ArrIndex || binary(n.op()) != null);
+    }
+
+    // the value of anything but a chained operator.
+    private void term(Expr e) throws Exception {
+        if (e instanceof NumberL n)
+            number(n, false);
+        else if (e instanceof UnaryOpExpr n && n.op() == Op.Negative && n.expr() instanceof NumberL l)
+            number(l, true);
+        else if (e instanceof IdentifierL n)
+            getl(slot(n));
+        else if (e instanceof BoolL n)
+            op(n.value() ? PUSH_1Z : PUSH_0Z);
+        else if (e instanceof CharL n)
+            pushUnsigned(n.value());
+        else if (e instanceof NullL)
+            op(PUSH_0O);
+        else if (e instanceof MethodCallExpr n && n.fn() instanceof IdentifierL fn) {
+            for (var arg : n.args())
+                value(arg);
+            op(INVOKESTATIC);
+            buf.putShort((short)pool.member("", fn.tok().getImage()));
+        } else if (e instanceof IfExpr || e instanceof UnaryOpExpr u && step(u.op()) != null
+                || e instanceof BinOpExpr n && (n.op() == Op.Swap || base(n.op()) != null))
+            expr(e, true);
+        else
+            throw cantEmit(e);
+    }
+
+    // -1 is pushed as it is, not as 1 and a neg.
+    private void number(NumberL n, boolean negate) throws Exception {
+        NumberValue v;
+        try {
+            v = NumberValue.of(n);
+        } catch (NumberFormatException e) {
+            throw new Exception("bad number " + n.tok().getImage() + " at line " + n.tok().getLine() + ".", e);
+        }
+        if (negate)
+            v = v.isFloat() ? NumberValue.ofFloating(v.type(), -v.asDouble())
+                : NumberValue.ofInteger(v.type(), v.unsigned(), -v.bits());
+        if (v.isFloat()) {
+            double d = v.asDouble();
+            if (Double.doubleToRawLongBits(d) == 0)
+                op(PUSH_FZ);
+            else if (v.type() == 'f') {
+                op(PUSH_F);
+                buf.putFloat((float)d);
+            } else {
+                op(PUSH_D);
+                buf.putDouble(d);
+            }
+        } else if (v.unsigned())
+            pushUnsigned(v.bits());
+        else
+            push(v.bits());
+    }
+
+    private void push(long v) {
+        if (v == 0)
+            op(PUSH_0Z);
+        else if (v == 1)
+            op(PUSH_1Z);
+        else if (v == (byte)v) {
+            op(PUSH_Z);
+            buf.put((byte)v);
+        } else if (v == (short)v) {
+            op(PUSH_S);
+            buf.putShort((short)v);
+        } else if (v == (int)v) {
+            op(PUSH_I);
+            buf.putInt((int)v);
+        } else {
+            op(PUSH_L);
+            buf.putLong(v);
+        }
+    }
+
+    private void pushUnsigned(long v) {
+        if (v == 0)
+            op(PUSH_0Z);
+        else if (v == 1)
+            op(PUSH_1Z);
+        else if ((v & ~0xffL) == 0) {
+            op(PUSH_UZ);
+            buf.put((byte)v);
+        } else if ((v & ~0xffffL) == 0) {
+            op(PUSH_US);
+            buf.putShort((short)v);
+        } else if ((v & ~0xffffffffL) == 0) {
+            op(PUSH_UI);
+            buf.putInt((int)v);
+        } else {
+            op(PUSH_UL);
+            buf.putLong(v);
+        }
+    }
+
+    private void getl(int slot) {
+        if (slot == 0)
+            op(GETL_0);
+        else if (slot == 1)
+            op(GETL_1);
+        else
+            local(GETL_B, GETL_S, slot);
+    }
+
+    private void putl(int slot) {
+        if (slot == 0)
+            op(PUTL_0);
+        else if (slot == 1)
+            op(PUTL_1);
+        else
+            local(PUTL_B, PUTL_S, slot);
+    }
+
+    private void duput(int slot) {
+        local(DUPUT_B, DUPUT_S, slot);
+    }
+
+    private void local(Opcode narrow, Opcode wide, int slot) {
+        if (slot < 0x100) {
+            op(narrow);
+            buf.put((byte)slot);
+        } else {
+            op(wide);
+            buf.putShort((short)slot);
+        }
+    }
+
+    // the variable an assignment writes, through a declaration.
+    private static IdentifierL target(Expr e) throws Exception {
+        if (e instanceof BinOpExpr n && n.op() == Op.Declare)
+            e = n.left();
+        if (e instanceof IdentifierL id)
+            return id;
+        throw cantEmit(e);
+    }
+
+    private int slot(IdentifierL id) throws Exception {
+        int symbol = id.symbol();
+        if (symbol >= slots.length)
+            slots = Arrays.copyOf(slots, Math.max(symbol + 1, slots.length * 2));
+        if (slots[symbol] == 0) {
+            if (locals == 0x10000)
+                throw new Exception("too many locals, " + id.tok().getImage() + " is the 65537th.");
+            slots[symbol] = ++locals;
+        }
+        return slots[symbol] - 1;
+    }
+
+    // the op an assignment applies, Assign for a plain one, null if it isn't one.
+    private static Op base(Op op) {
+        return switch (op) {
+            case Assign, DeclAssign -> Op.Assign;
+            case OrAssign -> Op.Or;
+            case NorAssign -> Op.Nor;
+            case AndAssign -> Op.And;
+            case NandAssign -> Op.Nand;
+            case XorAssign -> Op.Xor;
+            case XnorAssign -> Op.Xnor;
+            case PowAssign -> Op.Pow;
+            case MulAssign -> Op.Mul;
+            case DivAssign -> Op.Div;
+            case AddAssign -> Op.Add;
+            case SubAssign -> Op.Sub;
+            case BwOrAssign -> Op.BwOr;
+            case BwNorAssign -> Op.BwNor;
+            case BwAndAssign -> Op.BwAnd;
+            case BwNandAssign -> Op.BwNand;
+            case BwXorAssign -> Op.BwXor;
+            case BwXnorAssign -> Op.BwXnor;
+            case LeftShiftAssign -> Op.LeftShift;
+            case RightShiftAssign -> Op.RightShift;
+            case LeftRollAssign -> Op.LeftRoll;
+            case RightRollAssign -> Op.RightRoll;
+            default -> null;
+        };
+    }
+
+    private static Opcode binary(Op op) {
+        return switch (op) {
+            case Eq -> CMP_E;
+            case Ne -> CMP_NE;
+            case Le -> CMP_LE;
+            case Ge -> CMP_GE;
+            case Lt -> CMP_L;
+            case Gt -> CMP_G;
+            case Or -> OR;
+            case Nor -> NOR;
+            case And -> AND;
+            case Nand -> NAND;
+            case Xor -> XOR;
+            case Xnor -> XNOR;
+            case Pow -> POW;
+            case Mul -> MUL;
+            case Div -> DIV;
+            case Add -> ADD;
+            case Sub -> SUB;
+            case BwOr -> BOR;
+            case BwNor -> BNOR;
+            case BwAnd -> BAND;
+            case BwNand -> BNAND;
+            case BwXor -> BXOR;
+            case BwXnor -> BXNOR;
+            case LeftShift -> LSH;
+            case RightShift -> RSH;
+            case LeftRoll -> LRL;
+            case RightRoll -> RRL;
+            default -> null;
+        };
+    }
+
+    private static Opcode step(Op op) {
+        return switch (op) {
+            case PreInc, PostInc -> ADD;
+            case PreDec, PostDec -> SUB;
+            default -> null;
+        };
+    }
+
+    private int label() {
+        if (labelCount == labels.length) {
+            labels = Arrays.copyOf(labels, labelCount * 2);
+            labelJumps = Arrays.copyOf(labelJumps, labelCount * 2);
+        }
+        labels[labelCount] = -1;
+        return labelCount++;
+    }
+
+    private void place(int label) {
+        labels[label] = buf.position();
+        labelJumps[label] = jumpCount;
+    }
+
+    // the operand is filled in once every label is placed and the branches are relaxed.
+    private void jump(Opcode op, int label) {
+        if (jumpCount == jumps.length) {
+            jumps = Arrays.copyOf(jumps, jumpCount * 2);
+            targets = Arrays.copyOf(targets, jumpCount * 2);
+        }
+        jumps[jumpCount] = buf.position();
+        targets[jumpCount++] = label;
+        op(op);
+        buf.putShort((short)0);
+    }
+
+    // room for the opcode and its operand.
+    private void op(Opcode op) {
+        if (buf.remaining() < 1 + op.operand) {
+            ByteBuffer bigger = ByteBuffer.allocateDirect(buf.capacity() * 2).order(ByteOrder.BIG_ENDIAN);
+            buf.flip();
+            buf = bigger.put(buf);
+        }
+        buf.put(op.code());
+    }
+
+    private static Exception cantEmit(Object node) {
+        return new Exception("can't emit " + node.getClass().getSimpleName() + " yet.");
+    }
+}
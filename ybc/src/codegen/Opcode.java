@@ -0,0 +1,49 @@
+package src.codegen;
+
+/**
+ * The instructions of the isa, in its order, so an opcode is the ordinal.
+ * {@code operand} is the size in bytes of the immediate after the opcode.
+ */
+public enum Opcode {
+    PUSH_Z(1), PUSH_0Z(0), PUSH_1Z(0), PUSH_FZ(0), PUSH_UZ(1),
+    PUSH_S(2), PUSH_US(2), PUSH_I(4), PUSH_UI(4), PUSH_L(8), PUSH_UL(8),
+    PUSH_F(4), PUSH_D(8), PUSH_0O(0),
+    POP(0), DUP(0), SWAP(0),
+
+    GETL_B(1), GETL_0(0), GETL_1(0), GETL_S(2),
+    DUPUT_B(1), DUPUT_S(2),
+    PUTL_B(1), PUTL_0(0), PUTL_1(0), PUTL_S(2),
+
+    ALLOC(2), FREE(0), GETFSTATIC(2), PUTFSTATIC(2), INVOKESTATIC(2),
+    GETF(2), PUTF(2), INVOKE(2), INVOKEPRIMITIVE(2),
+    ALLOC_ARR(0), GETARR(0), PUTARR(0), ARRLEN(0), RET(0), EXIT(0),
+
+    GOTO(1), IF_E(1), IF_G(1), IF_L(1), IF_NE(1), IF_GE(1), IF_LE(1),
+    CMP_E(0), CMP_G(0), CMP_L(0), CMP_NE(0), CMP_GE(0), CMP_LE(0),
+    GOTO_S(2), IF_E_S(2), IF_G_S(2), IF_L_S(2), IF_NE_S(2), IF_GE_S(2), IF_LE_S(2),
+
+    ADD(0), SUB(0), NEG(0), MUL(0), DIV(0), POW(0),
+    NOT(0), OR(0), AND(0), XOR(0), NOR(0), NAND(0), XNOR(0),
+    BNOT(0), BOR(0), BAND(0), BXOR(0), BNOR(0), BNAND(0), BXNOR(0),
+    LSH(0), RSH(0), LRL(0), RRL(0),
+
+    N2Z(0), N2S(0), N2I(0), N2L(0), N2F(0), N2D(0),
+    F2Z(0), F2S(0), F2I(0), F2L(0), F2D(0),
+    D2Z(0), D2S(0), D2I(0), D2L(0), D2F(0),
+    ;
+
+    public final int operand;
+
+    private Opcode(int operand) {
+        this.operand = operand;
+    }
+
+    public byte code() {
+        return (byte)ordinal();
+    }
+
+    /** The name the isa gives it. */
+    public String mnemonic() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,48 @@
+package src.lexer;
+
+/**
+ * Character classes of the lexer as a bitset per ASCII char, so every
+ * classification is a single array load instead of a String.indexOf scan.
+ * Non-ASCII chars belong to no class, which makes them identifier chars.
+ */
+final class CharClass {
+    static final int SYMBOWL      = 1 << 0;
+    static final int WHITESPACE   = 1 << 1;
+    static final int DIGIT        = 1 << 2;
+    static final int NONZERO      = 1 << 3;
+    static final int HEX          = 1 << 4;
+    static final int OCT          = 1 << 5;
+    static final int BIN          = 1 << 6;
+    static final int BASE         = 1 << 7;  // 0b 0o 0x
+    static final int INT_SUFFIX   = 1 << 8;  // z s i l
+    static final int FLOAT_SUFFIX = 1 << 9;  // f d
+    static final int ESCAPE       = 1 << 10; // \n \t ...
+    static final int NOT_IDENTIFIER = SYMBOWL | WHITESPACE;
+
+    private static final short[] TABLE = new short[128];
+
+    static {
+        set(Lexer.SYMBOWLS, SYMBOWL);
+        set(Lexer.WHITESPACE, WHITESPACE);
+        set("0123456789", DIGIT);
+        set("123456789", NONZERO);
+        set("0123456789abcdefABCDEF", HEX);
+        set("01234567", OCT);
+        set("01", BIN);
+        set("box", BASE);
+        set("zsilZSIL", INT_SUFFIX);
+        set("fdFD", FLOAT_SUFFIX);
+        set("ntbrf\"`\\", ESCAPE);
+    }
+
+    private CharClass() {}
+
+    private static void set(String chars, int cls) {
+        for (int i = 0; i < chars.length(); i++)
+            TABLE[chars.charAt(i)] |= cls;
+    }
+
+    static boolean is(char c, int cls) {
+        return c < 128 && (TABLE[c] & cls) != 0;
+    }
+}
@@ -0,0 +1,109 @@
+package src.lexer;
+
+/**
+ * Perfect hash over the keywords, keyed by length, first and last char.
+ * An identifier is looked up straight from the lexer's window, so the
+ * common case (not a keyword) costs a hash and a length compare.
+ */
+final class Keywords {
+    private static final int SIZE = 128;
+    private static final int MIN_LENGTH, MAX_LENGTH;
+    private static final char[][] WORDS = new char[SIZE][];
+    private static final TokenType[] TYPES = new TokenType[SIZE];
+    private static final int SEED;
+
+    static {
+        Object[] keywords = {
+            "switch", TokenType.KSwitch,
+            "case", TokenType.KCase,
+            "if", TokenType.KIf,
+            "else", TokenType.KElse,
+            "loop", TokenType.KLoop,
+            "break", TokenType.KBreak,
+            "continue", TokenType.KContinue,
+            "return", TokenType.KReturn,
+            "assert", TokenType.KAssert,
+            "this", TokenType.KThis,
+            "This", TokenType.KCThis,
+            "native", TokenType.KNative,
+            "prot", TokenType.KProt,
+            "priv", TokenType.KPriv,
+            "final", TokenType.KFinal,
+            "fn", TokenType.KFn,
+            "class", TokenType.KClass,
+            "primitive", TokenType.KPrimitive,
+            "enum", TokenType.KEnum,
+            "intef", TokenType.KInterface,
+            "impl", TokenType.KImplement,
+            "for", TokenType.KFor,
+            "cast", TokenType.KCast,
+            "new", TokenType.KNew,
+            "is", TokenType.KIs,
+            "void", TokenType.KVoid,
+            "auto", TokenType.KAuto,
+            "byte", TokenType.KByte,
+            "short", TokenType.KShort,
+            "int", TokenType.KInt,
+            "long", TokenType.KLong,
+            "ubyte", TokenType.KUbyte,
+            "ushort", TokenType.KUshort,
+            "uint", TokenType.KUint,
+            "ulong", TokenType.KUlong,
+            "float", TokenType.KFloat,
+            "double", TokenType.KDouble,
+            "null", TokenType.KNull,
+            "true", TokenType.KTrue,
+            "false", TokenType.KFalse,
+        };
+        int min = Integer.MAX_VALUE, max = 0;
+        for (int i = 0; i < keywords.length; i += 2) {
+            min = Math.min(min, ((String)keywords[i]).length());
+            max = Math.max(max, ((String)keywords[i]).length());
+        }
+        MIN_LENGTH = min;
+        MAX_LENGTH = max;
+        SEED = findSeed(keywords);
+        for (int i = 0; i < keywords.length; i += 2) {
+            char[] word = ((String)keywords[i]).toCharArray();
+            int h = hash(SEED, word, 0, word.length);
+            WORDS[h] = word;
+            TYPES[h] = (TokenType)keywords[i + 1];
+        }
+    }
+
+    private Keywords() {}
+
+    private static int findSeed(Object[] keywords) {
+        outer:
+        for (int seed = 1; seed < 1 << 16; seed++) {
+            boolean[] used = new boolean[SIZE];
+            for (int i = 0; i < keywords.length; i += 2) {
+                char[] word = ((String)keywords[i]).toCharArray();
+                int h = hash(seed, word, 0, word.length);
+                if (used[h])
+                    continue outer;
+                used[h] = true;
+            }
+            return seed;
+        }
+        throw new IllegalStateException("no perfect hash for the keywords.");
+    }
+
+    private static int hash(int seed, char[] buf, int offset, int length) {
+        int h = (buf[offset] * seed + buf[offset + length - 1]) * seed + length;
+        return (h ^ (h >>> 7)) & (SIZE - 1);
+    }
+
+    static TokenType lookup(char[] buf, int offset, int length) {
+        if (length < MIN_LENGTH || length > MAX_LENGTH)
+            return TokenType.Identifier;
+        int h = hash(SEED, buf, offset, length);
+        char[] word = WORDS[h];
+        if (word == null || word.length != length)
+            return TokenType.Identifier;
+        for (int i = 0; i < length; i++)
+            if (word[i] != buf[offset + i])
+                return TokenType.Identifier;
+        return TYPES[h];
+    }
+}
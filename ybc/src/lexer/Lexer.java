@@ -2,8 +2,16 @@ package src.lexer;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.MalformedInputException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Iterator;
 
+import src.Diagnostics;
+import src.Diagnostics.Code;
 import src.Result;
 import src.lexer.TokenType;
 import src.lexer.exception.*;
@@ -12,25 +20,232 @@ public class Lexer implements Iterator<Result<Token, Exception>> {
     public static final String SYMBOWLS = "@{}()[].,;>-+*/%=!<~&|^:?";
     public static final String WHITESPACE = " \n\t\r\b\f";
     public static final String NOT_IDENTIFIER = SYMBOWLS + WHITESPACE;
+    private static final int WINDOW_SIZE = 8192;
     public final String SOURCE;
+    private final SymbolTable symbols;
     private final Reader reader;
+    private final ByteBuffer bytes;
+    private char[] buf;
+    private int base, pos, limit, mark;
     private Token tok;
     private boolean eos, err;
     private char cc;
+    private Diagnostics diagnostics;
 
+    /**
+     * Lexes a stream, pulling it into a reusable window of {@value WINDOW_SIZE}
+     * chars at a time instead of calling {@link Reader#read()} per char.
+     * The window only grows when a single token doesn't fit in it.
+     */
     public Lexer(final Reader reader, final String source) throws IOException {
+        this(reader, source, new SymbolTable());
+    }
+
+    public Lexer(final Reader reader, final String source, final SymbolTable symbols) throws IOException {
+        this(reader, null, new char[WINDOW_SIZE], 0, source, symbols);
+    }
+
+    /**
+     * Lexes a stream that starts inside a bigger text, at {@code offset} on
+     * {@code line} and {@code column} of it, so tokens get positions in that text.
+     */
+    public Lexer(final Reader reader, final String source, final SymbolTable symbols, final int offset, final int line, final int column) throws IOException {
+        this(reader, null, new char[WINDOW_SIZE], 0, source, symbols, offset, line, column);
+    }
+
+    /**
+     * Lexes an in-memory text directly, the whole text is the window.
+     */
+    public Lexer(final CharSequence text, final String source) throws IOException {
+        this(text, source, new SymbolTable());
+    }
+
+    public Lexer(final CharSequence text, final String source, final SymbolTable symbols) throws IOException {
+        this(null, null, text.toString().toCharArray(), text.length(), source, symbols);
+    }
+
+    /**
+     * Lexes UTF-8 bytes, decoding them into the window as it's consumed,
+     * with a fast path for ASCII.
+     */
+    public Lexer(final ByteBuffer bytes, final String source) throws IOException {
+        this(bytes, source, new SymbolTable());
+    }
+
+    public Lexer(final ByteBuffer bytes, final String source, final SymbolTable symbols) throws IOException {
+        this(null, bytes.duplicate(), new char[WINDOW_SIZE], 0, source, symbols);
+    }
+
+    /**
+     * Lexes a UTF-8 file, memory-mapping it instead of reading it through a stream.
+     */
+    public Lexer(final Path path) throws IOException {
+        this(path, new SymbolTable());
+    }
+
+    public Lexer(final Path path, final SymbolTable symbols) throws IOException {
+        this(map(path), path.toString(), symbols);
+    }
+
+    private Lexer(final Reader reader, final ByteBuffer bytes, final char[] buf, final int limit, final String source, final SymbolTable symbols) throws IOException {
+        this(reader, bytes, buf, limit, source, symbols, 0, 1, 0);
+    }
+
+    private Lexer(final Reader reader, final ByteBuffer bytes, final char[] buf, final int limit, final String source, final SymbolTable symbols,
+            final int offset, final int line, final int column) throws IOException {
+        this.symbols = symbols;
         this.reader = reader;
+        this.bytes = bytes;
+        this.buf = buf;
+        this.limit = limit;
         this.SOURCE = source;
+        base = offset;
+        pos = 0;
+        mark = -1;
         tok = new Token();
-        tok.line = 1;
+        tok.line = line;
+        tok.column = column;
         eos = err = false;
         advanceEOS();
-        while (WHITESPACE.indexOf(cc) > -1)
+        while (CharClass.is(cc, CharClass.WHITESPACE))
             advanceEOS();
     }
 
+    public static ByteBuffer map(final Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(path + " is too large to map.");
+            // the mapping stays valid after the channel is closed.
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos < limit)
+            return buf[pos++];
+        if (reader == null && bytes == null)
+            return -1;
+        // keep the current token in the window, it's sliced out of it later.
+        int keep = mark < 0 ? pos : mark;
+        if (keep > 0) {
+            System.arraycopy(buf, keep, buf, 0, limit - keep);
+            base += keep;
+            limit -= keep;
+            pos -= keep;
+            if (mark >= 0)
+                mark -= keep;
+        }
+        if (buf.length - limit < 2)
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        int n = reader != null
+            ? reader.read(buf, limit, buf.length - limit)
+            : decode(buf, limit, buf.length - limit);
+        if (n <= 0)
+            return -1;
+        limit += n;
+        return buf[pos++];
+    }
+
+    /**
+     * Decodes UTF-8 from {@link #bytes} into {@code dst}, stopping early
+     * rather than splitting a surrogate pair. Returns the number of chars
+     * written, or -1 when there are no bytes left.
+     */
+    private int decode(final char[] dst, final int off, final int len) throws IOException {
+        int p = bytes.position(), end = bytes.limit();
+        if (p == end)
+            return -1;
+        int i = off, n = off + len;
+        while (i < n && p < end) {
+            int b = bytes.get(p);
+            if (b >= 0) {
+                dst[i++] = (char)b;
+                p++;
+                continue;
+            }
+            int cp, size;
+            if ((b & 0xe0) == 0xc0) {
+                cp = b & 0x1f;
+                size = 2;
+            } else if ((b & 0xf0) == 0xe0) {
+                cp = b & 0x0f;
+                size = 3;
+            } else if ((b & 0xf8) == 0xf0) {
+                cp = b & 0x07;
+                size = 4;
+            } else
+                throw new MalformedInputException(1);
+            if (p + size > end)
+                throw new MalformedInputException(end - p);
+            for (int k = 1; k < size; k++) {
+                int c = bytes.get(p + k);
+                if ((c & 0xc0) != 0x80)
+                    throw new MalformedInputException(k);
+                cp = cp << 6 | c & 0x3f;
+            }
+            // overlong forms, surrogates and out of range code points.
+            if (cp < (size == 2 ? 0x80 : size == 3 ? 0x800 : 0x10000) || cp > Character.MAX_CODE_POINT
+                    || Character.isSurrogate((char)cp) && size == 3)
+                throw new MalformedInputException(size);
+            if (size < 4)
+                dst[i++] = (char)cp;
+            else if (i + 1 < n) {
+                dst[i++] = Character.highSurrogate(cp);
+                dst[i++] = Character.lowSurrogate(cp);
+            } else
+                break;
+            p += size;
+        }
+        bytes.position(p);
+        return i - off;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /** Errors are also reported to {@code diagnostics} from now on. */
+    public void setDiagnostics(final Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    private UnexpectedException unexpected(Code code, Object detail) {
+        if (diagnostics != null)
+            diagnostics.report(code, detail, SOURCE, tok);
+        return new UnexpectedException(code, detail, SOURCE, tok);
+    }
+
+    private UnkownEscapeSequenceException unknownEscape(Code code, char c) {
+        if (diagnostics != null)
+            diagnostics.report(code, c, SOURCE, tok);
+        return new UnkownEscapeSequenceException(code, c, SOURCE, tok);
+    }
+
+    private void beginToken() {
+        mark = pos - 1;
+        tok.image = null;
+        tok.symbol = -1;
+        tok.length = -1;
+    }
+
+    private void endToken() {
+        endToken(eos ? pos : pos - 1);
+    }
+
+    private void endToken(int end) {
+        tok.offset = base + mark;
+        tok.length = end - mark;
+        sliceToken();
+    }
+
+    private void sliceToken() {
+        tok.chars = buf;
+        tok.start = mark;
+    }
+
     private void advanceEOS() throws IOException {
-        int c = reader.read();
+        int c = read();
         if (c == '\n') {
             tok.line++;
             tok.column = 0;
@@ -44,7 +259,7 @@ public class Lexer implements Iterator<Result<Token, Exception>> {
     }
 
     private void advance() throws IOException, LexerException {
-        int c = reader.read();
+        int c = read();
         if (cc == '\n') {
             tok.line++;
             tok.column = 0;
@@ -52,7 +267,8 @@ public class Lexer implements Iterator<Result<Token, Exception>> {
         tok.column++;
         if (c == -1) {
             eos = err = true;
-            throw new UnexpectedException("unexpected EOS.", SOURCE, tok);
+            endToken(pos);
+            throw unexpected(Code.UNEXPECTED_EOS, null);
         }
         else
             cc = (char)c;
@@ -64,33 +280,59 @@ public class Lexer implements Iterator<Result<Token, Exception>> {
 
     public Result<Token, Exception> next() {
         try {
+            return Result.ofValue(nextToken());
+        } catch (Exception e) {
+            return Result.ofError(e);
+        }
+    }
+
+    /**
+     * Same as {@link #next()}, without wrapping the token in a Result.
+     * The returned token is reused by the next call.
+     */
+    public Token nextToken() throws Exception {
+        try {
+            beginToken();
             if (cc == '`')
                 tokenizeCharacter();
             else if (cc == '"')
                 tokenizeString();
-            else if ("0123456789".indexOf(cc) > -1)
+            else if (CharClass.is(cc, CharClass.DIGIT))
                 tokenizeNumber();
-            else if (SYMBOWLS.indexOf(cc) > -1)
+            else if (CharClass.is(cc, CharClass.SYMBOWL))
                 tokenizeSymbowl();
             else
                 tokenizeIdentifier();
+            if (tok.length < 0)
+                endToken();
+            switch (tok.type) {
+                case Identifier, LNumber, LString, LCharacter -> {
+                    tok.symbol = symbols.intern(buf, mark, tok.length);
+                    tok.image = symbols.name(tok.symbol);
+                }
+                default -> {}
+            }
 
-            while (WHITESPACE.indexOf(cc) > -1)
+            // mark stays on the token until the next call, so the window
+            // can't drop its image while skipping whitespace.
+            while (CharClass.is(cc, CharClass.WHITESPACE))
                 advanceEOS();
+            sliceToken();
         } catch (Exception e) {
             err = true;
-            return Result.ofError(e);
+            throw e;
         }
-        return Result.ofValue(tok);
+        return tok;
     }
 
     private void tokenizeCharacter() throws IOException, LexerException {
         // `#c`
         tok.type = TokenType.LCharacter;
         advance();
-        tok.image = "`" + parseEscapeSequence() + "`";
+        parseEscapeSequence();
         if (cc != '`') {
-            throw new UnexpectedException("expected \"`\", got \"" + cc + "\".", SOURCE, tok);
+            endToken();
+            throw unexpected(Code.EXPECTED_BACKTICK, cc);
         }
         advanceEOS();
     }
@@ -98,66 +340,49 @@ public class Lexer implements Iterator<Result<Token, Exception>> {
     private void tokenizeString() throws IOException, LexerException {
         // "#c*"
         tok.type = TokenType.LString;
-        tok.image = "\"";
         advance();
         while (cc != '"') {
-            tok.image += parseEscapeSequence();
+            parseEscapeSequence();
         }
         advanceEOS();
-        tok.image += '"';
     }
 
     private void tokenizeNumber() throws IOException, LexerException {
         tok.type = TokenType.LNumber;
-        tok.image = parseSimpleNumber(); // 0-9
-        if (tok.image.equals("0") && "box".indexOf(cc) > -1) {
-            tok.image += parseBasedNumber(false);
+        boolean zero = cc == '0';
+        if (parseSimpleNumber() == 1 && zero && CharClass.is(cc, CharClass.BASE)) { // 0-9
+            parseBasedNumber(false);
             // [u][zsil]
-            if (cc == 'u' || cc == 'U' ) {
-                tok.image += cc;
+            if (cc == 'u' || cc == 'U' )
                 advanceEOS();
-            }
-            if ("zsilZSIL".indexOf(cc) > -1) {
-                tok.image += cc;
+            if (CharClass.is(cc, CharClass.INT_SUFFIX))
                 advanceEOS();
-            }
             return;
         }
         boolean flt = false;
         if (cc == '.') {
             advance();
-            tok.image += '.' + parseSimpleNumber();
+            parseSimpleNumber();
             flt = true;
         }
         // e[+-]0-9 + d
         if (cc == 'e' || cc == 'E') {
-            tok.image += cc;
             advance();
-            if (cc == '+') {
-                tok.image += cc;
-                advance();
-            } else if (cc == '-') {
-                tok.image += cc;
+            if (cc == '+' || cc == '-')
                 advance();
-            }
-            tok.image += parseSimpleNumber();
+            parseSimpleNumber();
             return;
         }
         // [u][bsil]
-        if (!flt && (cc == 'u' || cc == 'U' )) {
-            tok.image += cc;
+        if (!flt && (cc == 'u' || cc == 'U' ))
             advanceEOS();
-        }
-        if (!flt && "zsilZSIL".indexOf(cc) > -1) {
-            tok.image += cc;
+        if (!flt && CharClass.is(cc, CharClass.INT_SUFFIX)) {
             advanceEOS();
             return;
         }
         // [fd]
-        if ("fdFD".indexOf(cc) > -1) {
-            tok.image += cc;
+        if (CharClass.is(cc, CharClass.FLOAT_SUFFIX))
             advanceEOS();
-        }
     }
 
     private void tokenizeSymbowl() throws Exception, Error {
@@ -189,19 +414,15 @@ public class Lexer implements Iterator<Result<Token, Exception>> {
             case '?' -> TokenType.SQuestion;
             default -> throw new UnreachableError();
         };
-        tok.image = String.valueOf(cc);
         advanceEOS();
         if (eos)
             return;
         if (cc == '/') {
             tok.type = TokenType.Comment;
-            tok.image += cc;
             advanceEOS();
             while (cc != '\n' && !eos) {
-                tok.image += cc;
                 if (cc == '/') {
                     advanceEOS();
-                    tok.image += cc;
                     if (cc == '/') {
                         advanceEOS();
                         return;
@@ -213,136 +434,78 @@ public class Lexer implements Iterator<Result<Token, Exception>> {
     }
 
     private void tokenizeIdentifier() throws IOException, LexerException {
-        tok.image = String.valueOf(cc);
         advanceEOS();
-        while (!(NOT_IDENTIFIER.indexOf(cc) > -1 || eos)) {
-            tok.image += cc;
+        while (!(CharClass.is(cc, CharClass.NOT_IDENTIFIER) || eos))
             advanceEOS();
-        }
-        tok.type = switch (tok.image) {
-            case "switch" -> TokenType.KSwitch;
-            case "case" -> TokenType.KCase;
-            case "if" -> TokenType.KIf;
-            case "else" -> TokenType.KElse;
-            case "loop" -> {
-                if (cc == '!') {
-                    advanceEOS();
-                    yield TokenType.KLoopWhile;
-                }
-                yield TokenType.KLoop;
-            }
-            case "break" -> {
-                if (cc == '!') {
-                    advanceEOS();
-                    yield TokenType.KBreakif;
-                }
-                yield TokenType.KBreak;
-            }
-            case "continue" -> {
-                if (cc == '!') {
-                    advanceEOS();
-                    yield TokenType.KContinueif;
-                }
-                yield TokenType.KContinue;
-            }
-            case "return" -> {
-                if (cc == '!') {
-                    advanceEOS();
-                    yield TokenType.KReturnif;
-                }
-                yield TokenType.KReturn;
-            }
-            case "assert" -> TokenType.KAssert;
-            case "this" -> TokenType.KThis;
-            case "This" -> TokenType.KCThis;
-            case "native" -> TokenType.KNative;
-            case "prot" -> TokenType.KProt;
-            case "priv" -> TokenType.KPriv;
-            case "final" -> TokenType.KFinal;
-            case "fn" -> TokenType.KFn;
-            case "class" -> TokenType.KClass;
-            case "primitive" -> TokenType.KPrimitive;
-            case "enum" -> TokenType.KEnum;
-            case "intef" -> TokenType.KInterface;
-            case "impl" -> TokenType.KImplement;
-            case "for" -> TokenType.KFor;
-            case "cast" -> TokenType.KCast;
-            case "new" -> TokenType.KNew;
-            case "is" -> TokenType.KIs;
-            case "void" -> TokenType.KVoid;
-            case "auto" -> TokenType.KAuto;
-            case "byte" -> TokenType.KByte;
-            case "short" -> TokenType.KShort;
-            case "int" -> TokenType.KInt;
-            case "long" -> TokenType.KLong;
-            case "ubyte" -> TokenType.KUbyte;
-            case "ushort" -> TokenType.KUshort;
-            case "uint" -> TokenType.KUint;
-            case "ulong" -> TokenType.KUlong;
-            case "float" -> TokenType.KFloat;
-            case "double" -> TokenType.KDouble;
-            case "null" -> TokenType.KNull;
-            case "true" -> TokenType.KTrue;
-            case "false" -> TokenType.KFalse;
-            default -> TokenType.Identifier;
+        // the image of `loop!` and friends doesn't include the `!`.
+        endToken();
+        TokenType type = Keywords.lookup(buf, mark, tok.length);
+        tok.type = switch (type) {
+            case KLoop -> bang(type, TokenType.KLoopWhile);
+            case KBreak -> bang(type, TokenType.KBreakif);
+            case KContinue -> bang(type, TokenType.KContinueif);
+            case KReturn -> bang(type, TokenType.KReturnif);
+            default -> type;
         };
     }
 
-    private String parseEscapeSequence() throws IOException, LexerException {
+    private TokenType bang(TokenType type, TokenType withBang) throws IOException {
+        if (cc != '!')
+            return type;
+        advanceEOS();
+        return withBang;
+    }
+
+    private void parseEscapeSequence() throws IOException, LexerException {
         if (cc != '\\') {
-            char c = cc;
             advance();
-            return String.valueOf(c);
+            return;
         }
-        String s = String.valueOf(cc);
         advance();
-        if ("ntbrf\"`\\".indexOf(cc) > -1) {
-            s += cc;
+        if (CharClass.is(cc, CharClass.ESCAPE)) {
             advance();
-            return s;
+            return;
         }
         if (cc == '0') {
             advanceEOS();
-            return parseBasedNumber(true);
+            parseBasedNumber(true);
+            return;
         }
-        if ("123456789".indexOf(cc) > -1) {
-            return parseSimpleNumber();
+        if (CharClass.is(cc, CharClass.NONZERO)) {
+            parseSimpleNumber();
+            return;
         }
-        throw new UnkownEscapeSequenceException("unknown escape sequence: \"" + cc + "\".", SOURCE, tok);
+        endToken();
+        throw unknownEscape(Code.UNKNOWN_ESCAPE, cc);
     }
 
-    private String parseBasedNumber(boolean doLimit) throws IOException, LexerException {
-        String s = String.valueOf(cc);
-        String chars;
-        int limit;
+    private void parseBasedNumber(boolean doLimit) throws IOException, LexerException {
+        int digits, limit;
         if (cc == 'x') {
-            chars = "0123456789abcdefABCDEF";
+            digits = CharClass.HEX;
             limit = 2;
         } else if (cc == 'o') {
-            chars = "01234567";
+            digits = CharClass.OCT;
             limit = 3;
         } else if (cc == 'b') {
-            chars = "01";
+            digits = CharClass.BIN;
             limit = 8;
         } else {
-            throw new UnkownEscapeSequenceException("0x, 0o, or 0b expected, got unknown \"" + cc + "\".", SOURCE, tok);
+            endToken();
+            throw unknownEscape(Code.EXPECTED_BASE, cc);
         }
         advanceEOS();
         for (int i = 0; (i < limit || !doLimit) && !eos; i++) {
-            if (chars.indexOf(cc) < 0)
+            if (!CharClass.is(cc, digits))
                 break;
-            s += cc;
             advanceEOS();
         }
-        return s;
     }
 
-    private String parseSimpleNumber() throws IOException, LexerException {
-        String num = "";
-        while ("0123456789".indexOf(cc) > -1) {
-            num += cc;
+    private int parseSimpleNumber() throws IOException, LexerException {
+        int n = 0;
+        for (; CharClass.is(cc, CharClass.DIGIT); n++)
             advanceEOS();
-        }
-        return num;
+        return n;
     }
 }
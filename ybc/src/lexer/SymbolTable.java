@@ -0,0 +1,83 @@
+package src.lexer;
+
+import java.util.Arrays;
+
+/**
+ * Interns identifier and literal images for a whole compilation. Every
+ * distinct image is stored once and referred to by its symbol id, ids are
+ * handed out in first-use order starting at 0.
+ */
+public final class SymbolTable {
+    private String[] names;
+    private int[] hashes;
+    // open addressing, a slot holds id + 1, 0 is empty.
+    private int[] slots;
+    private int size;
+
+    public SymbolTable() {
+        names = new String[64];
+        hashes = new int[64];
+        slots = new int[128];
+        size = 0;
+    }
+
+    public int size() { return size; }
+
+    public String name(int symbol) {
+        return names[symbol];
+    }
+
+    public int intern(CharSequence image) {
+        char[] chars = image.toString().toCharArray();
+        return intern(chars, 0, chars.length);
+    }
+
+    public int intern(char[] buf, int offset, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++)
+            h = 31 * h + buf[offset + i];
+        int mask = slots.length - 1;
+        for (int i = h & mask;; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                int symbol = add(new String(buf, offset, length), h);
+                slots[i] = symbol + 1;
+                if (size * 2 > slots.length)
+                    rehash();
+                return symbol;
+            }
+            if (hashes[slot - 1] == h && equals(names[slot - 1], buf, offset, length))
+                return slot - 1;
+        }
+    }
+
+    private int add(String name, int hash) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int symbol = 0; symbol < size; symbol++) {
+            int i = hashes[symbol] & mask;
+            while (slots[i] != 0)
+                i = (i + 1) & mask;
+            slots[i] = symbol + 1;
+        }
+    }
+
+    private static boolean equals(String name, char[] buf, int offset, int length) {
+        if (name.length() != length)
+            return false;
+        for (int i = 0; i < length; i++)
+            if (name.charAt(i) != buf[offset + i])
+                return false;
+        return true;
+    }
+}
@@ -3,19 +3,49 @@ package src.lexer;
 public class Token {
     protected TokenType type;
     protected String image;
+    // the image is a slice of the lexer's window until someone asks for it.
+    protected char[] chars;
+    protected int start, offset, length;
+    protected int symbol = -1;
     protected int line, column;
 
     protected Token() {}
 
+    public Token(TokenType type, String image, int symbol, int offset, int length, int line, int column) {
+        this.type = type;
+        this.image = image;
+        this.symbol = symbol;
+        this.offset = offset;
+        this.length = length;
+        this.line = line;
+        this.column = column;
+    }
+
     public TokenType getType() { return type; }
     public int getLine() { return line; }
     public int getColumn() { return column; }
-    public String getImage() { return image; }
+    public int getOffset() { return offset; }
+    public int getLength() { return length; }
+    // the symbol id of identifiers and literals, -1 otherwise.
+    public int getSymbol() { return symbol; }
+
+    public String getImage() {
+        if (image == null && chars != null)
+            image = new String(chars, start, length);
+        return image;
+    }
 
+    /**
+     * The lexer reuses its token and window, so a token that has to outlive
+     * the next {@link Lexer#next()} must be cloned.
+     */
     public Token cloneToken() {
         Token tok = new Token();
         tok.type = type;
-        tok.image = image;
+        tok.image = getImage();
+        tok.offset = offset;
+        tok.length = length;
+        tok.symbol = symbol;
         tok.line = line;
         tok.column = column;
         return tok;
@@ -24,6 +54,6 @@ public class Token {
     @Override
     public String toString() {
         return "Token[%s:%d:%d: %s]"
-            .formatted(type.toString(), line, column, image);
+            .formatted(type.toString(), line, column, getImage());
     }
 }
@@ -0,0 +1,74 @@
+package src.lexer;
+
+import java.util.Arrays;
+
+/**
+ * A whole source lexed up front into parallel int arrays, without comments,
+ * so it can be split and parsed in pieces. Read-only once built.
+ */
+public final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    public final String SOURCE;
+    private final SymbolTable symbols;
+    private int[] types, ids, offsets, lengths, lines, columns;
+    private int size;
+    // what stopped the lexer after the last token, if anything.
+    private Exception error;
+
+    public TokenBuffer(final Lexer lexer) {
+        SOURCE = lexer.SOURCE;
+        symbols = lexer.getSymbols();
+        types = new int[1024];
+        ids = new int[1024];
+        offsets = new int[1024];
+        lengths = new int[1024];
+        lines = new int[1024];
+        columns = new int[1024];
+        size = 0;
+        try {
+            while (lexer.hasNext()) {
+                Token tok = lexer.nextToken();
+                // the parser only sees a comment when it ends the stream.
+                if (tok.getType() == TokenType.Comment && lexer.hasNext())
+                    continue;
+                add(tok);
+            }
+        } catch (Exception e) {
+            error = e;
+        }
+    }
+
+    private void add(Token tok) {
+        if (size == types.length) {
+            int n = size * 2;
+            types = Arrays.copyOf(types, n);
+            ids = Arrays.copyOf(ids, n);
+            offsets = Arrays.copyOf(offsets, n);
+            lengths = Arrays.copyOf(lengths, n);
+            lines = Arrays.copyOf(lines, n);
+            columns = Arrays.copyOf(columns, n);
+        }
+        types[size] = tok.getType().ordinal();
+        ids[size] = tok.getSymbol();
+        offsets[size] = tok.getOffset();
+        lengths[size] = tok.getLength();
+        lines[size] = tok.getLine();
+        columns[size] = tok.getColumn();
+        size++;
+    }
+
+    public int size() { return size; }
+    public Exception getError() { return error; }
+    public SymbolTable getSymbols() { return symbols; }
+
+    public TokenType type(int i) { return TYPES[types[i]]; }
+    public int symbol(int i) { return ids[i]; }
+    public int offset(int i) { return offsets[i]; }
+    public int length(int i) { return lengths[i]; }
+    public int line(int i) { return lines[i]; }
+    public int column(int i) { return columns[i]; }
+
+    public String image(int i) {
+        return ids[i] >= 0 ? symbols.name(ids[i]) : type(i).image;
+    }
+}
@@ -10,75 +10,86 @@ public enum TokenType {
     LNumber,
 
     // Symbowl Lexer::tokenizeSymbowl
-    SOpenBracket,
-    SClosedBracket,
-    SOpenSquareBracket,
-    SClosedSquareBracket,
-    SOpenCurlyBracket,
-    SClosedCurlyBracket,
-    SDot,
-    SComma,
-    SPlus,
-    SMinus,
-    SStar,
-    SSlash,
-    SPercent,
-    SAnd,
-    SPipe,
-    SArrow,
-    STilde,
-    SBang,
-    SColon,
-    SSemicolon,
-    SEquals,
-    SLess,
-    SGreater,
-    SMonkeyA,
-    SQuestion,
+    SOpenBracket("("),
+    SClosedBracket(")"),
+    SOpenSquareBracket("["),
+    SClosedSquareBracket("]"),
+    SOpenCurlyBracket("{"),
+    SClosedCurlyBracket("}"),
+    SDot("."),
+    SComma(","),
+    SPlus("+"),
+    SMinus("-"),
+    SStar("*"),
+    SSlash("/"),
+    SPercent("%"),
+    SAnd("&"),
+    SPipe("|"),
+    SArrow("^"),
+    STilde("~"),
+    SBang("!"),
+    SColon(":"),
+    SSemicolon(";"),
+    SEquals("="),
+    SLess("<"),
+    SGreater(">"),
+    SMonkeyA("@"),
+    SQuestion("?"),
 
     // Keyword
-    KSwitch,
-    KCase,
-    KIf,
-    KElse,
-    KLoop,
-    KLoopWhile,
-    KBreak,
-    KContinue,
-    KReturn,
-    KBreakif,
-    KContinueif,
-    KReturnif,
-    KAssert,
-    KThis,
-    KCThis,
-    KNative,
-    KProt,
-    KPriv,
-    KFinal,
-    KFn,
-    KClass,
-    KPrimitive,
-    KEnum,
-    KInterface,
-    KImplement,
-    KFor,
-    KCast,
-    KNew,
-    KIs,
-    KVoid,
-    KAuto,
-    KByte,
-    KShort,
-    KInt,
-    KLong,
-    KUbyte,
-    KUshort,
-    KUint,
-    KUlong,
-    KFloat,
-    KDouble,
-    KNull,
-    KTrue,
-    KFalse,
+    KSwitch("switch"),
+    KCase("case"),
+    KIf("if"),
+    KElse("else"),
+    KLoop("loop"),
+    KLoopWhile("loop"),
+    KBreak("break"),
+    KContinue("continue"),
+    KReturn("return"),
+    KBreakif("break"),
+    KContinueif("continue"),
+    KReturnif("return"),
+    KAssert("assert"),
+    KThis("this"),
+    KCThis("This"),
+    KNative("native"),
+    KProt("prot"),
+    KPriv("priv"),
+    KFinal("final"),
+    KFn("fn"),
+    KClass("class"),
+    KPrimitive("primitive"),
+    KEnum("enum"),
+    KInterface("intef"),
+    KImplement("impl"),
+    KFor("for"),
+    KCast("cast"),
+    KNew("new"),
+    KIs("is"),
+    KVoid("void"),
+    KAuto("auto"),
+    KByte("byte"),
+    KShort("short"),
+    KInt("int"),
+    KLong("long"),
+    KUbyte("ubyte"),
+    KUshort("ushort"),
+    KUint("uint"),
+    KUlong("ulong"),
+    KFloat("float"),
+    KDouble("double"),
+    KNull("null"),
+    KTrue("true"),
+    KFalse("false");
+
+    // the fixed image of symbowls and keywords, null for everything else.
+    public final String image;
+
+    private TokenType() {
+        this(null);
+    }
+
+    private TokenType(String image) {
+        this.image = image;
+    }
 }
@@ -1,27 +1,60 @@
 package src.lexer.exception;
 
+import src.Diagnostics;
 import src.lexer.Token;
+import src.lexer.TokenType;
 
+/**
+ * An error in a source. Cheap to throw: there's no stack trace and the
+ * message is only formatted when asked for.
+ */
 public class LexerException extends Exception {
-    protected final String message;
+    private final String source;
+    private final Diagnostics.Code code;
+    private final Object detail;
+    // the token is copied, the lexer reuses its own.
+    private final TokenType type;
+    private final String image;
+    private final int line, column;
+    private String message;
 
     public LexerException(String message, String source, Token tok) {
-        if (tok == null)
-            // exmaple: main.yb: error: unexpected EOF.
-            this.message = String.format("%s: \33[91merror\33[0m: %s",
-                source, message);
-        else 
-            // exmaple: main.yb:10:11: error: expected 0x, got unknown "b". [token LNumber |null]
-            this.message = String.format("%s:%d:%d: \33[91merror\33[0m: %s [token %s |%s]",
-                source, tok.getLine(), tok.getColumn(), message, tok.getType(), tok.getImage());
+        this(null, message, source, tok);
+    }
+
+    public LexerException(Diagnostics.Code code, Object detail, String source, Token tok) {
+        super(null, null, false, false);
+        this.source = source;
+        this.code = code;
+        this.detail = detail;
+        this.type = tok == null ? null : tok.getType();
+        this.image = tok == null ? null : tok.getImage();
+        this.line = tok == null ? 0 : tok.getLine();
+        this.column = tok == null ? 0 : tok.getColumn();
+    }
+
+    public Diagnostics.Code getCode() {
+        return code;
     }
 
     public String getMessage() {
+        if (message == null)
+            message = format(source, code == null ? (String)detail : code.render(detail), type, line, column, image);
         return message;
     }
 
+    public static String format(String source, String message, TokenType type, int line, int column, String image) {
+        if (type == null)
+            // exmaple: main.yb: error: unexpected EOF.
+            return String.format("%s: \33[91merror\33[0m: %s",
+                source, message);
+        // exmaple: main.yb:10:11: error: expected 0x, got unknown "b". [token LNumber |null]
+        return String.format("%s:%d:%d: \33[91merror\33[0m: %s [token %s |%s]",
+            source, line, column, message, type, image);
+    }
+
     @Override
     public String toString() {
-        return message;
+        return getMessage();
     }
 }
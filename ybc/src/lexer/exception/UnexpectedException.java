@@ -1,9 +1,14 @@
 package src.lexer.exception;
 
+import src.Diagnostics;
 import src.lexer.Token;
 
 public class UnexpectedException extends LexerException {
     public UnexpectedException(String message, String source, Token tok) {
         super(message, source, tok);
     }
+
+    public UnexpectedException(Diagnostics.Code code, Object detail, String source, Token tok) {
+        super(code, detail, source, tok);
+    }
 }
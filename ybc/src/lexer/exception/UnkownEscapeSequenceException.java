@@ -1,9 +1,14 @@
 package src.lexer.exception;
 
+import src.Diagnostics;
 import src.lexer.Token;
 
 public class UnkownEscapeSequenceException extends LexerException {
     public UnkownEscapeSequenceException(String message, String source, Token tok) {
         super(message, source, tok);
     }
+
+    public UnkownEscapeSequenceException(Diagnostics.Code code, Object detail, String source, Token tok) {
+        super(code, detail, source, tok);
+    }
 }
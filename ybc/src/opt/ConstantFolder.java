@@ -0,0 +1,432 @@
+package src.opt;
+
+import src.lexer.Token;
+import src.lexer.TokenType;
+import src.parser.NumberValue;
+
+import static src.parser.Node.*;
+
+/**
+ * Folds operators on literals into literals, and drops operations that
+ * can't change their operand: {@code x * 1}, {@code x + 0}, {@code +x},
+ * {@code -(-x)} and the like. An {@code if} on a literal keeps its branch.
+ * <p>
+ * Integers wrap around at the width of their suffix, signed or unsigned, a
+ * literal without one takes the other operand's type. Two without one are
+ * {@code @1}s, 32 bits as {@link NumberValue} reads them, and arithmetic on
+ * them that leaves that range isn't folded, {@code 2147483647 + 1} and
+ * {@code 1 << 31} included. Operands of different types, and results that
+ * aren't finite, are left alone. A negative result is the negation of a
+ * literal, as it's written.
+ * <p>
+ * An operand is only dropped, as in {@code x & 0}, when it's pure: no
+ * calls, assignments or anything else that could have an effect or fail.
+ * {@code x * 0} and {@code x ** 0} also need {@code x} to be an integer,
+ * a float could be a NaN or infinite, see {@link #integer(Expr)}.
+ * Subtrees that don't change are kept, not copied.
+ */
+public final class ConstantFolder extends Rewriter {
+    private static final ConstantFolder INSTANCE = new ConstantFolder();
+
+    private ConstantFolder() {}
+
+    public static Program fold(final Program program) {
+        return INSTANCE.rewrite(program);
+    }
+
+    public static Stmt fold(final Stmt stmt) {
+        return INSTANCE.rewrite(stmt);
+    }
+
+    public static Expr fold(final Expr e) {
+        return INSTANCE.rewrite(e);
+    }
+
+    @Override
+    protected Boolean known(final Expr condition) {
+        return condition instanceof BoolL b ? b.value() : null;
+    }
+
+    @Override
+    protected Expr unary(final UnaryOpExpr n, final Expr x) {
+        switch (n.op()) {
+            case Pass:
+                return x;
+            case Negative: {
+                if (x instanceof UnaryOpExpr inner && inner.op() == Op.Negative)
+                    return inner.expr();
+                // -1 is as folded as it gets, only unsigned literals wrap around.
+                NumberValue v = number(x);
+                if (v != null && v.unsigned())
+                    return orElse(literal(NumberValue.ofInteger(v.type(), true, -v.bits()), first(x)), n, x);
+                break;
+            }
+            case BwNot: {
+                if (x instanceof UnaryOpExpr inner && inner.op() == Op.BwNot)
+                    return inner.expr();
+                NumberValue v = number(x);
+                if (v != null && !v.isFloat())
+                    return orElse(literal(NumberValue.ofInteger(v.type(), v.unsigned(), ~v.bits()), first(x)), n, x);
+                break;
+            }
+            case Not: {
+                if (x instanceof UnaryOpExpr inner && inner.op() == Op.Not && isBool(inner.expr()))
+                    return inner.expr();
+                if (x instanceof BoolL b)
+                    return bool(!b.value(), b.tok());
+                break;
+            }
+            default:
+                break;
+        }
+        return x == n.expr() ? n : new UnaryOpExpr(n.op(), x);
+    }
+
+    @Override
+    protected Expr binary(final BinOpExpr n, final Expr a, final Expr b) {
+        NumberValue x = number(a), y = number(b);
+        if (x != null && y != null) {
+            Expr folded = fold(n.op(), x, y, first(a));
+            if (folded != null)
+                return folded;
+        }
+        if (a instanceof BoolL p && b instanceof BoolL q) {
+            Boolean folded = fold(n.op(), p.value(), q.value());
+            if (folded != null)
+                return bool(folded, p.tok());
+        }
+        switch (n.op()) {
+            case Add, BwOr, BwXor:
+                if (isZero(y))
+                    return a;
+                if (isZero(x))
+                    return b;
+                break;
+            case Sub, LeftShift, RightShift, LeftRoll, RightRoll:
+                if (isZero(y))
+                    return a;
+                break;
+            case Mul:
+                if (isOne(y))
+                    return a;
+                if (isOne(x))
+                    return b;
+                if (isZero(y) && pure(a) && integer(a))
+                    return b;
+                if (isZero(x) && pure(b) && integer(b))
+                    return a;
+                break;
+            case Div:
+                if (isOne(y))
+                    return a;
+                break;
+            case Pow:
+                if (isOne(y))
+                    return a;
+                if (isZero(y) && pure(a) && integer(a))
+                    return number(NumberValue.ofInteger(y.type(), y.unsigned(), 1), first(b));
+                break;
+            case BwAnd:
+                if (isZero(y) && pure(a))
+                    return b;
+                if (isZero(x) && pure(b))
+                    return a;
+                break;
+            case And:
+                if (b instanceof BoolL q && (q.value() || pure(a)))
+                    return q.value() ? a : b;
+                if (a instanceof BoolL p && (p.value() || pure(b)))
+                    return p.value() ? b : a;
+                break;
+            case Or:
+                if (b instanceof BoolL q && (!q.value() || pure(a)))
+                    return q.value() ? b : a;
+                if (a instanceof BoolL p && (!p.value() || pure(b)))
+                    return p.value() ? a : b;
+                break;
+            default:
+                break;
+        }
+        return a == n.left() && b == n.right() ? n : new BinOpExpr(n.op(), a, b);
+    }
+
+    // null if it can't be folded.
+    private static Expr fold(Op op, NumberValue x, NumberValue y, Token at) {
+        if (x.isFloat() || y.isFloat()) {
+            if (x.type() != y.type())
+                return null;
+            double a = x.asDouble(), b = y.asDouble(), r;
+            switch (op) {
+                case Add -> r = a + b;
+                case Sub -> r = a - b;
+                case Mul -> r = a * b;
+                case Div -> r = a / b;
+                case Pow -> r = Math.pow(a, b);
+                case Eq, Ne, Lt, Gt, Le, Ge -> {
+                    return compare(op, a < b ? -1 : a > b ? 1 : 0, at);
+                }
+                default -> {
+                    return null;
+                }
+            }
+            return literal(NumberValue.ofFloating(x.type(), r), at);
+        }
+        if (op == Op.LeftShift || op == Op.RightShift || op == Op.LeftRoll || op == Op.RightRoll) {
+            int width = x.width();
+            long count = y.bits();
+            if (count < 0 || count >= width)
+                return null;
+            int c = (int)count;
+            long a = x.bits(), mask = -1L >>> (64 - width);
+            long r = switch (op) {
+                case LeftShift -> a << c;
+                case RightShift -> x.unsigned() ? a >>> c : a >> c;
+                case LeftRoll -> c == 0 ? a : (a & mask) << c | (a & mask) >>> (width - c);
+                default -> c == 0 ? a : (a & mask) >>> c | (a & mask) << (width - c);
+            };
+            if (op == Op.LeftShift && x.type() == 0 && !NumberValue.fits(x.type(), x.unsigned(), r))
+                return null;
+            return literal(NumberValue.ofInteger(x.type(), x.unsigned(), r), at);
+        }
+        char type;
+        boolean unsigned;
+        if (x.type() == 0 && !x.unsigned()) {
+            type = y.type();
+            unsigned = y.unsigned();
+            if (NumberValue.ofInteger(type, unsigned, x.bits()).bits() != x.bits())
+                return null;
+        } else if (y.type() == 0 && !y.unsigned()) {
+            type = x.type();
+            unsigned = x.unsigned();
+            if (NumberValue.ofInteger(type, unsigned, y.bits()).bits() != y.bits())
+                return null;
+        } else if (x.type() == y.type() && x.unsigned() == y.unsigned()) {
+            type = x.type();
+            unsigned = x.unsigned();
+        } else
+            return null;
+        long a = x.bits(), b = y.bits(), r;
+        switch (op) {
+            case Add -> r = a + b;
+            case Sub -> r = a - b;
+            case Mul -> r = a * b;
+            case Div -> {
+                if (b == 0)
+                    return null;
+                r = unsigned ? Long.divideUnsigned(a, b) : a / b;
+            }
+            case Pow -> {
+                if (!unsigned && b < 0)
+                    return null;
+                r = 1;
+                // wrapping as it goes is the same as wrapping at the end, an
+                // untyped one mustn't wrap a long either.
+                try {
+                    for (long base = a; b != 0; b >>>= 1) {
+                        if ((b & 1) != 0)
+                            r = type == 0 ? Math.multiplyExact(r, base) : r * base;
+                        if (b >>> 1 != 0)
+                            base = type == 0 ? Math.multiplyExact(base, base) : base * base;
+                    }
+                } catch (ArithmeticException e) {
+                    return null;
+                }
+            }
+            case BwOr -> r = a | b;
+            case BwNor -> r = ~(a | b);
+            case BwAnd -> r = a & b;
+            case BwNand -> r = ~(a & b);
+            case BwXor -> r = a ^ b;
+            case BwXnor -> r = ~(a ^ b);
+            case Eq, Ne, Lt, Gt, Le, Ge -> {
+                return compare(op, unsigned ? Long.compareUnsigned(a, b) : Long.compare(a, b), at);
+            }
+            default -> {
+                return null;
+            }
+        }
+        // an @1 doesn't wrap around, bitwise operators are defined at its width.
+        if (type == 0 && !isBitwise(op) && !NumberValue.fits(type, unsigned, r))
+            return null;
+        return literal(NumberValue.ofInteger(type, unsigned, r), at);
+    }
+
+    private static Boolean fold(Op op, boolean a, boolean b) {
+        return switch (op) {
+            case And -> a && b;
+            case Nand -> !(a && b);
+            case Or -> a || b;
+            case Nor -> !(a || b);
+            case Xor, Ne -> a != b;
+            case Xnor, Eq -> a == b;
+            default -> null;
+        };
+    }
+
+    private static Expr compare(Op op, int c, Token at) {
+        return bool(switch (op) {
+            case Eq -> c == 0;
+            case Ne -> c != 0;
+            case Lt -> c < 0;
+            case Gt -> c > 0;
+            case Le -> c <= 0;
+            default -> c >= 0;
+        }, at);
+    }
+
+    // the value of a literal or of a negated one, null for anything else.
+    static NumberValue number(Expr e) {
+        boolean negative = false;
+        if (e instanceof UnaryOpExpr n && n.op() == Op.Negative) {
+            e = n.expr();
+            negative = true;
+        }
+        if (!(e instanceof NumberL n))
+            return null;
+        NumberValue v;
+        try {
+            v = NumberValue.of(n);
+        } catch (NumberFormatException ex) {
+            return null; // the emitter reports it.
+        }
+        if (!negative)
+            return v;
+        return v.isFloat() ? NumberValue.ofFloating(v.type(), -v.asDouble())
+            : NumberValue.ofInteger(v.type(), v.unsigned(), -v.bits());
+    }
+
+    private static Expr literal(NumberValue v, Token at) {
+        if (v.isFloat() && !Double.isFinite(v.asDouble()))
+            return null;
+        Expr n = number(v, at);
+        return v.isNegative() ? new UnaryOpExpr(Op.Negative, n) : n;
+    }
+
+    static NumberL number(NumberValue v, Token at) {
+        return new NumberL(token(TokenType.LNumber, v.magnitude(), at));
+    }
+
+    private static BoolL bool(boolean value, Token at) {
+        return new BoolL(token(value ? TokenType.KTrue : TokenType.KFalse, String.valueOf(value), at), value);
+    }
+
+    // a token for a folded literal, where the expression it replaces starts.
+    private static Token token(TokenType type, String image, Token at) {
+        if (at == null)
+            return new Token(type, image, -1, 0, image.length(), 0, 0);
+        return new Token(type, image, -1, at.getOffset(), image.length(), at.getLine(), at.getColumn());
+    }
+
+    static Token first(Expr e) {
+        while (true) {
+            if (e instanceof UnaryOpExpr n)
+                e = n.expr();
+            else if (e instanceof BinOpExpr n)
+                e = n.left();
+            else if (e instanceof NumberL n)
+                return n.tok();
+            else if (e instanceof BoolL n)
+                return n.tok();
+            else if (e instanceof IdentifierL n)
+                return n.tok();
+            else
+                return null;
+        }
+    }
+
+    private static Expr orElse(Expr folded, UnaryOpExpr n, Expr x) {
+        if (folded != null)
+            return folded;
+        return x == n.expr() ? n : new UnaryOpExpr(n.op(), x);
+    }
+
+    private static boolean isZero(NumberValue v) {
+        return v != null && !v.isFloat() && v.bits() == 0;
+    }
+
+    private static boolean isOne(NumberValue v) {
+        return v != null && !v.isFloat() && v.bits() == 1;
+    }
+
+    private static boolean isBitwise(Op op) {
+        return switch (op) {
+            case BwOr, BwNor, BwAnd, BwNand, BwXor, BwXnor -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isBool(Expr e) {
+        if (e instanceof BoolL)
+            return true;
+        if (e instanceof UnaryOpExpr n)
+            return n.op() == Op.Not;
+        if (e instanceof BinOpExpr n)
+            return switch (n.op()) {
+                case Eq, Ne, Le, Ge, Lt, Gt, Or, Nor, And, Nand, Xor, Xnor -> true;
+                default -> false;
+            };
+        return false;
+    }
+
+    // no effects and can't fail: literals, locals and operators that can't
+    // trap. Down a chain of operators in a loop, so a long one can't overflow.
+    static boolean pure(Expr e) {
+        while (true) {
+            if (e instanceof ArrayL n) {
+                for (var value : n.value())
+                    if (!pure(value))
+                        return false;
+                return true;
+            }
+            if (e instanceof LiteralExpr)
+                return true;
+            if (e instanceof UnaryOpExpr n && switch (n.op()) {
+                    case Pass, Negative, Not, BwNot -> true;
+                    default -> false;
+                })
+                e = n.expr();
+            else if (e instanceof BinOpExpr n && switch (n.op()) {
+                    case Eq, Ne, Le, Ge, Lt, Gt, Or, Nor, And, Nand, Xor, Xnor, Pow, Mul, Add, Sub,
+                        BwOr, BwNor, BwAnd, BwNand, BwXor, BwXnor, LeftShift, RightShift, LeftRoll, RightRoll
+                        -> true;
+                    default -> false;
+                }) {
+                if (!pure(n.right()))
+                    return false;
+                e = n.left();
+            } else
+                return false;
+        }
+    }
+
+    // an integer whatever the types of the names in it: an integer literal,
+    // a bitwise operator or a shift, or arithmetic on integers. There are
+    // no types to go by yet, so anything else might be a float.
+    static boolean integer(Expr e) {
+        while (true) {
+            NumberValue v = number(e);
+            if (v != null)
+                return !v.isFloat();
+            if (e instanceof CharL)
+                return true;
+            if (e instanceof UnaryOpExpr n && n.op() == Op.BwNot)
+                return true;
+            if (e instanceof UnaryOpExpr n && (n.op() == Op.Negative || n.op() == Op.Pass))
+                e = n.expr();
+            else if (e instanceof BinOpExpr n && (isBitwise(n.op()) || switch (n.op()) {
+                    case LeftShift, RightShift, LeftRoll, RightRoll -> true;
+                    default -> false;
+                }))
+                return true;
+            else if (e instanceof BinOpExpr n && switch (n.op()) {
+                    case Add, Sub, Mul, Div, Pow -> true;
+                    default -> false;
+                }) {
+                if (!integer(n.right()))
+                    return false;
+                e = n.left();
+            } else
+                return false;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package src.opt;
+
+import java.util.function.UnaryOperator;
+
+import static src.parser.Node.*;
+
+/**
+ * Rebuilds a tree bottom up for a pass, which gets to replace each operator
+ * once its operands are rewritten, and can tell which way a branch goes.
+ * Subtrees that don't change are kept, not copied. A chain of operators is
+ * rewritten bottom up from an array, so a long one can't overflow.
+ */
+abstract class Rewriter {
+    public Program rewrite(final Program program) {
+        Stmt[] body = map(program.body(), this::rewrite);
+        return body == program.body() ? program : new Program(program.source(), body);
+    }
+
+    public Stmt rewrite(final Stmt stmt) {
+        if (stmt instanceof ExprStmt n) {
+            Expr e = rewrite(n.expr());
+            return e == n.expr() ? n : new ExprStmt(e);
+        } else if (stmt instanceof BlockStmt n) {
+            Stmt[] stmts = map(n.stmts(), this::rewrite);
+            return stmts == n.stmts() ? n : new BlockStmt(stmts);
+        } else if (stmt instanceof IfStmt n) {
+            Expr condition = rewrite(n.condition());
+            Boolean taken = known(condition);
+            if (taken != null)
+                return taken ? rewrite(n.body()) : n.otherwise() == null ? new EmptyStmt() : rewrite(n.otherwise());
+            Stmt body = rewrite(n.body()), otherwise = n.otherwise() == null ? null : rewrite(n.otherwise());
+            return condition == n.condition() && body == n.body() && otherwise == n.otherwise() ? n
+                : new IfStmt(condition, body, otherwise);
+        } else if (stmt instanceof LoopStmt n) {
+            Expr condition = rewriteNullable(n.condition());
+            Boolean taken = condition == null ? null : known(condition);
+            if (taken != null) {
+                if (!taken)
+                    return new EmptyStmt();
+                condition = null;
+            }
+            Stmt body = rewrite(n.body());
+            return condition == n.condition() && body == n.body() ? n : new LoopStmt(condition, body);
+        } else if (stmt instanceof BreakStmt n) {
+            Expr value = rewriteNullable(n.value());
+            return value == n.value() ? n : new BreakStmt(value);
+        } else if (stmt instanceof ReturnStmt n) {
+            Expr value = rewriteNullable(n.value());
+            return value == n.value() ? n : new ReturnStmt(value);
+        } else if (stmt instanceof ContinueStmt n) {
+            Expr value = rewriteNullable(n.value());
+            return value == n.value() ? n : new ContinueStmt(value);
+        } else if (stmt instanceof ImplReturnStmt n) {
+            Expr value = rewriteNullable(n.value());
+            return value == n.value() ? n : new ImplReturnStmt(value);
+        } else if (stmt instanceof SwitchStmt n) {
+            Expr value = rewrite(n.value());
+            SwitchCase[] cases = map(n.cases(), (c) -> {
+                Expr[] conditions = map(c.conditions(), this::rewrite);
+                Stmt body = rewrite(c.body());
+                return conditions == c.conditions() && body == c.body() ? c : new SwitchCase(conditions, body);
+            });
+            return value == n.value() && cases == n.cases() ? n : new SwitchStmt(value, cases);
+        } else if (stmt instanceof ClassStmt n) {
+            ClassField[] fields = map(n.fields(), (f) -> {
+                Expr init = rewriteNullable(f.init());
+                return init == f.init() ? f : new ClassField(f.mods(), f.name(), f.type(), init);
+            });
+            ClassMethod[] methods = map(n.methods(), this::rewrite);
+            return fields == n.fields() && methods == n.methods() ? n : new ClassStmt(n.mods(), n.name(), fields, methods);
+        } else if (stmt instanceof PrimitiveStmt n) {
+            ClassMethod[] methods = map(n.methods(), this::rewrite);
+            return methods == n.methods() ? n : new PrimitiveStmt(n.mods(), n.name(), n.type(), methods);
+        } else if (stmt instanceof ImplStmt n) {
+            ClassMethod[] methods = map(n.methods(), this::rewrite);
+            return methods == n.methods() ? n : new ImplStmt(n.mods(), n.clz(), n.interf(), methods);
+        }
+        return stmt;
+    }
+
+    private ClassMethod rewrite(ClassMethod m) {
+        Stmt body = m.body() == null ? null : rewrite(m.body());
+        return body == m.body() ? m : new ClassMethod(m.mods(), m.name(), m.args(), m.rettype(), m.isInline(), body);
+    }
+
+    public Expr rewrite(final Expr e) {
+        if (e instanceof UnaryOpExpr || e instanceof BinOpExpr)
+            return operators(e);
+        else if (e instanceof MethodCallExpr n) {
+            Expr fn = rewrite(n.fn());
+            Expr[] args = map(n.args(), this::rewrite);
+            return fn == n.fn() && args == n.args() ? n : new MethodCallExpr(fn, args);
+        } else if (e instanceof IfExpr n) {
+            Expr condition = rewrite(n.condition());
+            Boolean taken = known(condition);
+            if (taken != null)
+                return rewrite(taken ? n.body() : n.otherwise());
+            Expr body = rewrite(n.body()), otherwise = rewrite(n.otherwise());
+            return condition == n.condition() && body == n.body() && otherwise == n.otherwise() ? n
+                : new IfExpr(condition, body, otherwise);
+        } else if (e instanceof LoopExpr n) {
+            Expr condition = rewriteNullable(n.condition()), body = rewrite(n.body());
+            return condition == n.condition() && body == n.body() ? n : new LoopExpr(condition, body);
+        } else if (e instanceof LoopElseExpr n) {
+            Expr condition = rewriteNullable(n.condition()), body = rewrite(n.body()), otherwise = rewrite(n.otherwise());
+            return condition == n.condition() && body == n.body() && otherwise == n.otherwise() ? n
+                : new LoopElseExpr(condition, body, otherwise);
+        } else if (e instanceof SwitchExpr n) {
+            Expr condition = rewrite(n.condition());
+            SwitchExprCase[] cases = map(n.cases(), (c) -> {
+                Expr[] conditions = map(c.conditions(), this::rewrite);
+                Expr body = rewrite(c.body());
+                return conditions == c.conditions() && body == c.body() ? c : new SwitchExprCase(conditions, body);
+            });
+            return condition == n.condition() && cases == n.cases() ? n : new SwitchExpr(condition, cases);
+        } else if (e instanceof BreakIfExpr n) {
+            Expr condition = rewrite(n.condition()), value = rewrite(n.value());
+            return condition == n.condition() && value == n.value() ? n : new BreakIfExpr(condition, value);
+        } else if (e instanceof ContinueIfExpr n) {
+            Expr condition = rewrite(n.condition()), value = rewrite(n.value());
+            return condition == n.condition() && value == n.value() ? n : new ContinueIfExpr(condition, value);
+        } else if (e instanceof ReturnIfExpr n) {
+            Expr condition = rewrite(n.condition()), value = rewrite(n.value());
+            return condition == n.condition() && value == n.value() ? n : new ReturnIfExpr(condition, value);
+        } else if (e instanceof FnExpr n) {
+            Stmt body = rewrite(n.body());
+            return body == n.body() ? n : new FnExpr(n.args(), n.rettype(), body);
+        } else if (e instanceof ArrayL n) {
+            Expr[] value = map(n.value(), this::rewrite);
+            return value == n.value() ? n : new ArrayL(value);
+        }
+        return e;
+    }
+
+    // the chain of operators down the left operands, then back up it with
+    // the right ones. Those only nest as deep as the source does.
+    private Expr operators(Expr root) {
+        int depth = 0;
+        Expr e = root;
+        for (; e instanceof UnaryOpExpr || e instanceof BinOpExpr; e = operand(e))
+            depth++;
+        Expr[] chain = new Expr[depth];
+        e = root;
+        for (int i = 0; i < depth; i++, e = operand(e))
+            chain[i] = e;
+        Expr x = rewrite(e);
+        for (int i = depth - 1; i >= 0; i--) {
+            if (chain[i] instanceof UnaryOpExpr n)
+                x = unary(n, x);
+            else {
+                var n = (BinOpExpr)chain[i];
+                x = binary(n, x, rewrite(n.right()));
+            }
+        }
+        return x;
+    }
+
+    private static Expr operand(Expr e) {
+        return e instanceof UnaryOpExpr n ? n.expr() : ((BinOpExpr)e).left();
+    }
+
+    private Expr rewriteNullable(Expr e) {
+        return e == null ? null : rewrite(e);
+    }
+
+    /** {@code n} with its operand rewritten to {@code x}. */
+    protected Expr unary(final UnaryOpExpr n, final Expr x) {
+        return x == n.expr() ? n : new UnaryOpExpr(n.op(), x);
+    }
+
+    /** {@code n} with its operands rewritten to {@code a} and {@code b}. */
+    protected Expr binary(final BinOpExpr n, final Expr a, final Expr b) {
+        return a == n.left() && b == n.right() ? n : new BinOpExpr(n.op(), a, b);
+    }
+
+    /** Whether a rewritten condition holds, null if it's not known. */
+    protected Boolean known(final Expr condition) {
+        return null;
+    }
+
+    // the same array if nothing changed.
+    static <T> T[] map(T[] items, UnaryOperator<T> f) {
+        T[] out = items;
+        for (int i = 0; i < items.length; i++) {
+            T item = f.apply(items[i]);
+            if (item != items[i]) {
+                if (out == items)
+                    out = items.clone();
+                out[i] = item;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,106 @@
+package src.opt;
+
+import src.parser.NumberValue;
+
+import static src.parser.Node.*;
+
+/**
+ * Replaces operators on a constant with cheaper ones: {@code x ** 2} is
+ * {@code x * x}, a multiplication by a power of two a left shift, and an
+ * unsigned division by one a right shift. {@code x **= 2} goes the same
+ * way.
+ * <p>
+ * A shift is the same product only in integer arithmetic, wrapping
+ * included, and {@code mul} and {@code div} take floats too. So the other
+ * operand has to be known to be an integer without its names' types, an
+ * {@code (x & m) * 8} but not an {@code x * 8} or an {@code x *= 8}. A
+ * power of two is one of its literal's type as {@link NumberValue} reads
+ * it, an untyped {@code 2147483648} is an {@code @1} and so negative. A
+ * signed division rounds towards zero and a shift towards minus infinity,
+ * so only unsigned ones become shifts.
+ * <p>
+ * {@code x ** 2} uses {@code x} twice, so it has to be pure, and
+ * {@code x ** 3} a local. The same node is on both sides of the {@code *},
+ * which the emitter evaluates once. Run it after {@link ConstantFolder},
+ * which has already taken care of {@code x * 1} and the like.
+ */
+public final class StrengthReducer extends Rewriter {
+    private static final StrengthReducer INSTANCE = new StrengthReducer();
+
+    private StrengthReducer() {}
+
+    public static Program reduce(final Program program) {
+        return INSTANCE.rewrite(program);
+    }
+
+    public static Stmt reduce(final Stmt stmt) {
+        return INSTANCE.rewrite(stmt);
+    }
+
+    public static Expr reduce(final Expr e) {
+        return INSTANCE.rewrite(e);
+    }
+
+    @Override
+    protected Expr binary(final BinOpExpr n, final Expr a, final Expr b) {
+        NumberValue x = ConstantFolder.number(a), y = ConstantFolder.number(b);
+        switch (n.op()) {
+            case Pow:
+                if (isSquare(y) && ConstantFolder.pure(a))
+                    return new BinOpExpr(Op.Mul, a, a);
+                if (isInteger(y, 3) && a instanceof IdentifierL)
+                    return new BinOpExpr(Op.Mul, new BinOpExpr(Op.Mul, a, a), a);
+                break;
+            case PowAssign:
+                if (isSquare(y) && a instanceof IdentifierL)
+                    return new BinOpExpr(Op.MulAssign, a, a);
+                if (isInteger(y, 3) && a instanceof IdentifierL)
+                    return new BinOpExpr(Op.Assign, a, new BinOpExpr(Op.Mul, new BinOpExpr(Op.Mul, a, a), a));
+                break;
+            case Mul: {
+                int k = untyped(x) || !ConstantFolder.integer(a) ? 0 : log2(y);
+                if (k > 0)
+                    return new BinOpExpr(Op.LeftShift, a, count(y, k, b));
+                k = untyped(y) || !ConstantFolder.integer(b) ? 0 : log2(x);
+                if (k > 0)
+                    return new BinOpExpr(Op.LeftShift, b, count(x, k, a));
+                break;
+            }
+            case Div: {
+                int k = y != null && y.unsigned() && !untyped(x) && ConstantFolder.integer(a) ? log2(y) : 0;
+                if (k > 0)
+                    return new BinOpExpr(Op.RightShift, a, count(y, k, b));
+                break;
+            }
+            default:
+                break;
+        }
+        return super.binary(n, a, b);
+    }
+
+    // x * x is exact where pow may be off by an ulp, so 2.0 counts too.
+    private static boolean isSquare(NumberValue v) {
+        return isInteger(v, 2) || v != null && v.isFloat() && v.asDouble() == 2.0;
+    }
+
+    private static boolean isInteger(NumberValue v, long value) {
+        return v != null && !v.isFloat() && v.bits() == value;
+    }
+
+    // k if v is 2 ** k, 0 if it isn't a power of two or is 1.
+    private static int log2(NumberValue v) {
+        if (v == null || v.isFloat() || Long.bitCount(v.bits()) != 1)
+            return 0;
+        return Long.numberOfTrailingZeros(v.bits());
+    }
+
+    // a literal without a type takes the other operand's, which a shift count doesn't pass on.
+    private static boolean untyped(NumberValue v) {
+        return v != null && v.type() == 0;
+    }
+
+    // the shift count, of the same type as the literal it replaces.
+    private static NumberL count(NumberValue v, int k, Expr literal) {
+        return ConstantFolder.number(NumberValue.ofInteger(v.type(), v.unsigned(), k), ConstantFolder.first(literal));
+    }
+}
@@ -0,0 +1,668 @@
+package src.parser;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+import src.Result;
+import src.lexer.Token;
+import src.lexer.TokenType;
+
+import static src.parser.Node.*;
+
+/**
+ * A tree of nodes flattened into a few arrays, for passes over large
+ * programs. A node is an int id, with its {@link Kind} and one int per
+ * record component: a node id (-1 for null), a list, a token, a string or
+ * a value. Component indices are the record's component order, so
+ * {@code child(id, 1)} of a {@link Kind#BinOpExpr} is its left operand.
+ * <p>
+ * Ids are handed out in pre-order, a parent before its children and
+ * siblings in source order, so a forward scan over the ids is a depth
+ * first walk. {@link #parse(Parser)} builds it from the parser a
+ * statement at a time, the records of one statement are all that's ever
+ * alive next to the arena.
+ * <p>
+ * {@link #view(int)} is the typed view: it builds the records of a node
+ * and its subtree on demand, for code that pattern-matches on them.
+ */
+public final class AstArena {
+    /**
+     * The node kinds, named and numbered after their record. The shape has
+     * a char per component: 'n' for a node, 'l' for a list and 'v' for any
+     * other value.
+     */
+    public static enum Kind {
+        Program("vl"),
+        UnaryOpExpr("vn"), BinOpExpr("vnn"), MethodCallExpr("nl"), IfExpr("nnn"),
+        LoopExpr("nn"), LoopElseExpr("nnn"), SwitchExpr("nl"), BreakIfExpr("nn"),
+        ContinueIfExpr("nn"), ReturnIfExpr("nn"), FnExpr("lnn"),
+        EmptyStmt(""), ExprStmt("n"), BlockStmt("l"), IfStmt("nnn"),
+        LoopStmt("nn"), BreakStmt("n"), ReturnStmt("n"), ContinueStmt("n"),
+        ImplReturnStmt("n"), SwitchStmt("nl"), EnumStmt("lnl"), ClassStmt("lnll"),
+        InterfStmt("lnl"), PrimitiveStmt("lnnl"), ImplStmt("lnnl"),
+        IdentifierL("vv"), CharL("vv"), StringL("vv"), NumberL("v"),
+        ArrayL("l"), BoolL("vv"), NullL("v"),
+        BaseT("v"), TrashT(""), ArrayT("n"), SizedArrayT("nn"),
+        GenericT("nl"), ExtendedT("nl"), NullableT("n"), FnT("ln"),
+        SwitchExprCase("ln"), SwitchCase("ln"), ClassField("lnnn"),
+        ClassMethod("lnlnvn"), Method("nln"), Arg("nn"),
+        InstanceM(""), PrivateM(""), ProtectedM(""), FinalM(""), NativeM("vnn");
+
+        public final String shape;
+        public final int components;
+
+        private Kind(String shape) {
+            this.shape = shape;
+            this.components = shape.length();
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final Op[] OPS = Op.values();
+    private static final ABI[] ABIS = ABI.values();
+    // the target of a node nothing refers to, see add(Object).
+    private static final int ROOT = Integer.MIN_VALUE;
+
+    // nodes: kind and where their components start in `data`.
+    private byte[] kinds = new byte[1024];
+    private int[] starts = new int[1024];
+    private int nodes;
+    private int[] data = new int[4096];
+    private int size;
+    // a list is its length followed by the ids.
+    private int[] lists = new int[1024];
+    private int listSize;
+    // tokens, a column each.
+    private byte[] tokTypes = new byte[1024];
+    private int[] tokSymbols = new int[1024], tokOffsets = new int[1024], tokLengths = new int[1024];
+    private int[] tokLines = new int[1024], tokColumns = new int[1024];
+    private String[] tokImages = new String[1024];
+    private int tokens;
+    private String[] strings = new String[64];
+    private int stringCount;
+    // nodes waiting for an id, and the slot that gets it: an index into
+    // `data`, or ~index into `lists`. The ones a node adds are gathered
+    // in `children` first, to be pushed in reverse.
+    private Object[] pending = new Object[64];
+    private int[] targets = new int[64];
+    private int top;
+    private Object[] children = new Object[16];
+    private int[] childTargets = new int[16];
+    private int childCount;
+    // the top-level ids out of parse(Parser), the count goes first.
+    private int[] body = new int[64];
+    private int bodySize;
+
+    private AstArena() {}
+
+    /** Flattens the tree under {@code root}, its id is 0. */
+    public static AstArena of(final Node root) {
+        var arena = new AstArena();
+        arena.add(root);
+        arena.trim();
+        return arena;
+    }
+
+    /**
+     * Parses the rest of {@code parser}'s program into an arena, the
+     * {@link Kind#Program} is id 0.
+     */
+    public static Result<AstArena, Exception> parse(final Parser parser) {
+        var arena = new AstArena();
+        int at = arena.open(Kind.Program);
+        arena.data[at] = arena.addString(parser.source());
+        var res = parser.parseProgram(arena::statement);
+        if (res.hasError())
+            return Result.ofError(res.getError());
+        arena.data[at + 1] = arena.body();
+        arena.trim();
+        return Result.ofValue(arena);
+    }
+
+    public int size() { return nodes; }
+    public int root() { return 0; }
+
+    public Kind kind(final int id) {
+        return KINDS[kinds[id]];
+    }
+
+    /** The node id of a component, -1 for null. */
+    public int child(final int id, final int component) {
+        return data[starts[id] + component];
+    }
+
+    /** The length of a list component, -1 for null. */
+    public int count(final int id, final int component) {
+        int list = data[starts[id] + component];
+        return list < 0 ? -1 : lists[list];
+    }
+
+    /** The i-th node id of a list component. */
+    public int child(final int id, final int component, final int i) {
+        return lists[data[starts[id] + component] + 1 + i];
+    }
+
+    /** An int, char or boolean (0 or 1) component, or an enum's ordinal, -1 for null. */
+    public int value(final int id, final int component) {
+        return data[starts[id] + component];
+    }
+
+    /** The operator of a {@link Kind#UnaryOpExpr} or a {@link Kind#BinOpExpr}. */
+    public Op op(final int id) {
+        int op = data[starts[id]];
+        return op < 0 ? null : OPS[op];
+    }
+
+    public String string(final int id, final int component) {
+        int s = data[starts[id] + component];
+        return s < 0 ? null : strings[s];
+    }
+
+    /** The token index of a component, -1 for null. */
+    public int token(final int id, final int component) {
+        return data[starts[id] + component];
+    }
+
+    public TokenType tokenType(final int tok) { return TOKEN_TYPES[tokTypes[tok]]; }
+    public int tokenSymbol(final int tok) { return tokSymbols[tok]; }
+    public int tokenOffset(final int tok) { return tokOffsets[tok]; }
+    public int tokenLength(final int tok) { return tokLengths[tok]; }
+    public int tokenLine(final int tok) { return tokLines[tok]; }
+    public int tokenColumn(final int tok) { return tokColumns[tok]; }
+    public String tokenImage(final int tok) { return tokImages[tok]; }
+
+    /**
+     * The node {@code id} and its subtree as records, a {@link Node} or
+     * one of the records nodes hold. They're built on every call, bottom
+     * up and without recursion, and the arena keeps none of them.
+     */
+    public Record view(final int id) {
+        // a subtree is the ids from its root on, up to where every child
+        // met so far has been seen.
+        int end = id;
+        for (int open = 1; open > 0; end++)
+            open += children(end) - 1;
+        Object[] built = new Object[end - id];
+        for (int n = end - 1; n >= id; n--)
+            built[n - id] = build(n, id, built);
+        return (Record)built[0];
+    }
+
+    // the children of `id` that aren't null.
+    private int children(int id) {
+        String shape = kind(id).shape;
+        int n = 0;
+        for (int c = 0; c < shape.length(); c++) {
+            int v = data[starts[id] + c];
+            if (v < 0)
+                continue;
+            if (shape.charAt(c) == 'n')
+                n++;
+            else if (shape.charAt(c) == 'l')
+                for (int i = 1; i <= lists[v]; i++)
+                    if (lists[v + i] >= 0)
+                        n++;
+        }
+        return n;
+    }
+
+    // the record of `id`, its children are in `built` by id - base.
+    private Record build(int id, int base, Object[] built) {
+        return switch (kind(id)) {
+            case Program -> new Program(string(id, 0), nodes(id, 1, base, built, Stmt[]::new));
+            case UnaryOpExpr -> new UnaryOpExpr(op(id), node(id, 1, base, built));
+            case BinOpExpr -> new BinOpExpr(op(id), node(id, 1, base, built), node(id, 2, base, built));
+            case MethodCallExpr -> new MethodCallExpr(node(id, 0, base, built), nodes(id, 1, base, built, Expr[]::new));
+            case IfExpr -> new IfExpr(node(id, 0, base, built), node(id, 1, base, built), node(id, 2, base, built));
+            case LoopExpr -> new LoopExpr(node(id, 0, base, built), node(id, 1, base, built));
+            case LoopElseExpr -> new LoopElseExpr(node(id, 0, base, built), node(id, 1, base, built), node(id, 2, base, built));
+            case SwitchExpr -> new SwitchExpr(node(id, 0, base, built), nodes(id, 1, base, built, SwitchExprCase[]::new));
+            case BreakIfExpr -> new BreakIfExpr(node(id, 0, base, built), node(id, 1, base, built));
+            case ContinueIfExpr -> new ContinueIfExpr(node(id, 0, base, built), node(id, 1, base, built));
+            case ReturnIfExpr -> new ReturnIfExpr(node(id, 0, base, built), node(id, 1, base, built));
+            case FnExpr -> new FnExpr(nodes(id, 0, base, built, Arg[]::new), node(id, 1, base, built), node(id, 2, base, built));
+            case EmptyStmt -> new EmptyStmt();
+            case ExprStmt -> new ExprStmt(node(id, 0, base, built));
+            case BlockStmt -> new BlockStmt(nodes(id, 0, base, built, Stmt[]::new));
+            case IfStmt -> new IfStmt(node(id, 0, base, built), node(id, 1, base, built), node(id, 2, base, built));
+            case LoopStmt -> new LoopStmt(node(id, 0, base, built), node(id, 1, base, built));
+            case BreakStmt -> new BreakStmt(node(id, 0, base, built));
+            case ReturnStmt -> new ReturnStmt(node(id, 0, base, built));
+            case ContinueStmt -> new ContinueStmt(node(id, 0, base, built));
+            case ImplReturnStmt -> new ImplReturnStmt(node(id, 0, base, built));
+            case SwitchStmt -> new SwitchStmt(node(id, 0, base, built), nodes(id, 1, base, built, SwitchCase[]::new));
+            case EnumStmt -> new EnumStmt(nodes(id, 0, base, built, Modifier[]::new), node(id, 1, base, built),
+                nodes(id, 2, base, built, IdentifierL[]::new));
+            case ClassStmt -> new ClassStmt(nodes(id, 0, base, built, Modifier[]::new), node(id, 1, base, built),
+                nodes(id, 2, base, built, ClassField[]::new), nodes(id, 3, base, built, ClassMethod[]::new));
+            case InterfStmt -> new InterfStmt(nodes(id, 0, base, built, Modifier[]::new), node(id, 1, base, built),
+                nodes(id, 2, base, built, Method[]::new));
+            case PrimitiveStmt -> new PrimitiveStmt(nodes(id, 0, base, built, Modifier[]::new), node(id, 1, base, built),
+                node(id, 2, base, built), nodes(id, 3, base, built, ClassMethod[]::new));
+            case ImplStmt -> new ImplStmt(nodes(id, 0, base, built, Modifier[]::new), node(id, 1, base, built),
+                node(id, 2, base, built), nodes(id, 3, base, built, ClassMethod[]::new));
+            case IdentifierL -> new IdentifierL(tok(id, 0), value(id, 1));
+            case CharL -> new CharL(tok(id, 0), (char)value(id, 1));
+            case StringL -> new StringL(tok(id, 0), string(id, 1));
+            case NumberL -> new NumberL(tok(id, 0));
+            case ArrayL -> new ArrayL(nodes(id, 0, base, built, Expr[]::new));
+            case BoolL -> new BoolL(tok(id, 0), value(id, 1) != 0);
+            case NullL -> new NullL(tok(id, 0));
+            case BaseT -> new BaseT(tok(id, 0));
+            case TrashT -> new TrashT();
+            case ArrayT -> new ArrayT(node(id, 0, base, built));
+            case SizedArrayT -> new SizedArrayT(node(id, 0, base, built), node(id, 1, base, built));
+            case GenericT -> new GenericT(node(id, 0, base, built), nodes(id, 1, base, built, TypeExpr[]::new));
+            case ExtendedT -> new ExtendedT(node(id, 0, base, built), nodes(id, 1, base, built, TypeExpr[]::new));
+            case NullableT -> new NullableT(node(id, 0, base, built));
+            case FnT -> new FnT(nodes(id, 0, base, built, Arg[]::new), node(id, 1, base, built));
+            case SwitchExprCase -> new SwitchExprCase(nodes(id, 0, base, built, Expr[]::new), node(id, 1, base, built));
+            case SwitchCase -> new SwitchCase(nodes(id, 0, base, built, Expr[]::new), node(id, 1, base, built));
+            case ClassField -> new ClassField(nodes(id, 0, base, built, Modifier[]::new), node(id, 1, base, built),
+                node(id, 2, base, built), node(id, 3, base, built));
+            case ClassMethod -> new ClassMethod(nodes(id, 0, base, built, Modifier[]::new), node(id, 1, base, built),
+                nodes(id, 2, base, built, Arg[]::new), node(id, 3, base, built), value(id, 4) != 0, node(id, 5, base, built));
+            case Method -> new Method(node(id, 0, base, built), nodes(id, 1, base, built, Arg[]::new), node(id, 2, base, built));
+            case Arg -> new Arg(node(id, 0, base, built), node(id, 1, base, built));
+            case InstanceM -> new InstanceM();
+            case PrivateM -> new PrivateM();
+            case ProtectedM -> new ProtectedM();
+            case FinalM -> new FinalM();
+            case NativeM -> new NativeM(value(id, 0) < 0 ? null : ABIS[value(id, 0)], node(id, 1, base, built),
+                node(id, 2, base, built));
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T node(int id, int component, int base, Object[] built) {
+        int child = child(id, component);
+        return child < 0 ? null : (T)built[child - base];
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T[] nodes(int id, int component, int base, Object[] built, IntFunction<T[]> array) {
+        int count = count(id, component);
+        if (count < 0)
+            return null;
+        T[] items = array.apply(count);
+        for (int i = 0; i < count; i++) {
+            int child = child(id, component, i);
+            items[i] = child < 0 ? null : (T)built[child - base];
+        }
+        return items;
+    }
+
+    private Token tok(int id, int component) {
+        int t = token(id, component);
+        return t < 0 ? null : new Token(tokenType(t), tokImages[t], tokSymbols[t], tokOffsets[t],
+            tokLengths[t], tokLines[t], tokColumns[t]);
+    }
+
+    // a top-level statement, straight from the parser.
+    private void statement(Stmt stmt) {
+        if (bodySize + 1 == body.length)
+            body = Arrays.copyOf(body, body.length * 2);
+        body[++bodySize] = add(stmt);
+    }
+
+    // the statements as the program's body list.
+    private int body() {
+        body[0] = bodySize;
+        ensureLists(bodySize + 1);
+        int at = listSize;
+        System.arraycopy(body, 0, lists, at, bodySize + 1);
+        listSize += bodySize + 1;
+        return at;
+    }
+
+    // adds `root` and its subtree depth first off the pending stack, so a
+    // deep tree can't overflow. The id of `root`, -1 for null.
+    private int add(Object root) {
+        int id = nodes;
+        if (root == null)
+            return -1;
+        push(root, ROOT);
+        while (top > 0) {
+            Object node = pending[--top];
+            int slot = targets[top];
+            pending[top] = null;
+            if (slot >= 0)
+                data[slot] = nodes;
+            else if (slot != ROOT)
+                lists[~slot] = nodes;
+            childCount = 0;
+            visit(node);
+            for (int i = childCount - 1; i >= 0; i--) {
+                push(children[i], childTargets[i]);
+                children[i] = null;
+            }
+        }
+        return id;
+    }
+
+    private void push(Object node, int target) {
+        if (top == pending.length) {
+            pending = Arrays.copyOf(pending, top * 2);
+            targets = Arrays.copyOf(targets, top * 2);
+        }
+        pending[top] = node;
+        targets[top++] = target;
+    }
+
+    // a component to add after the node, or -1 now if it's null.
+    private void child(int slot, Object node) {
+        if (node == null) {
+            if (slot >= 0)
+                data[slot] = -1;
+            else
+                lists[~slot] = -1;
+            return;
+        }
+        if (childCount == children.length) {
+            children = Arrays.copyOf(children, childCount * 2);
+            childTargets = Arrays.copyOf(childTargets, childCount * 2);
+        }
+        children[childCount] = node;
+        childTargets[childCount++] = slot;
+    }
+
+    private void list(int slot, Object[] items) {
+        if (items == null) {
+            data[slot] = -1;
+            return;
+        }
+        ensureLists(items.length + 1);
+        int at = listSize;
+        lists[at] = items.length;
+        listSize += items.length + 1;
+        data[slot] = at;
+        for (int i = 0; i < items.length; i++)
+            child(~(at + 1 + i), items[i]);
+    }
+
+    // a new node of kind `kind`, the index of its first component.
+    private int open(Kind kind) {
+        if (nodes == kinds.length) {
+            kinds = Arrays.copyOf(kinds, nodes * 2);
+            starts = Arrays.copyOf(starts, nodes * 2);
+        }
+        if (size + kind.components > data.length)
+            data = Arrays.copyOf(data, Math.max(size + kind.components, data.length * 2));
+        kinds[nodes] = (byte)kind.ordinal();
+        starts[nodes++] = size;
+        int start = size;
+        size += kind.components;
+        return start;
+    }
+
+    private void visit(Object node) {
+        int at;
+        if (node instanceof Program n) {
+            at = open(Kind.Program);
+            data[at] = addString(n.source());
+            list(at + 1, n.body());
+        } else if (node instanceof UnaryOpExpr n) {
+            at = open(Kind.UnaryOpExpr);
+            data[at] = ordinal(n.op());
+            child(at + 1, n.expr());
+        } else if (node instanceof BinOpExpr n) {
+            at = open(Kind.BinOpExpr);
+            data[at] = ordinal(n.op());
+            child(at + 1, n.left());
+            child(at + 2, n.right());
+        } else if (node instanceof MethodCallExpr n) {
+            at = open(Kind.MethodCallExpr);
+            child(at, n.fn());
+            list(at + 1, n.args());
+        } else if (node instanceof IfExpr n) {
+            at = open(Kind.IfExpr);
+            child(at, n.condition());
+            child(at + 1, n.body());
+            child(at + 2, n.otherwise());
+        } else if (node instanceof LoopExpr n) {
+            at = open(Kind.LoopExpr);
+            child(at, n.condition());
+            child(at + 1, n.body());
+        } else if (node instanceof LoopElseExpr n) {
+            at = open(Kind.LoopElseExpr);
+            child(at, n.condition());
+            child(at + 1, n.body());
+            child(at + 2, n.otherwise());
+        } else if (node instanceof SwitchExpr n) {
+            at = open(Kind.SwitchExpr);
+            child(at, n.condition());
+            list(at + 1, n.cases());
+        } else if (node instanceof BreakIfExpr n) {
+            at = open(Kind.BreakIfExpr);
+            child(at, n.condition());
+            child(at + 1, n.value());
+        } else if (node instanceof ContinueIfExpr n) {
+            at = open(Kind.ContinueIfExpr);
+            child(at, n.condition());
+            child(at + 1, n.value());
+        } else if (node instanceof ReturnIfExpr n) {
+            at = open(Kind.ReturnIfExpr);
+            child(at, n.condition());
+            child(at + 1, n.value());
+        } else if (node instanceof FnExpr n) {
+            at = open(Kind.FnExpr);
+            list(at, n.args());
+            child(at + 1, n.rettype());
+            child(at + 2, n.body());
+        } else if (node instanceof EmptyStmt) {
+            open(Kind.EmptyStmt);
+        } else if (node instanceof ExprStmt n) {
+            at = open(Kind.ExprStmt);
+            child(at, n.expr());
+        } else if (node instanceof BlockStmt n) {
+            at = open(Kind.BlockStmt);
+            list(at, n.stmts());
+        } else if (node instanceof IfStmt n) {
+            at = open(Kind.IfStmt);
+            child(at, n.condition());
+            child(at + 1, n.body());
+            child(at + 2, n.otherwise());
+        } else if (node instanceof LoopStmt n) {
+            at = open(Kind.LoopStmt);
+            child(at, n.condition());
+            child(at + 1, n.body());
+        } else if (node instanceof BreakStmt n) {
+            child(open(Kind.BreakStmt), n.value());
+        } else if (node instanceof ReturnStmt n) {
+            child(open(Kind.ReturnStmt), n.value());
+        } else if (node instanceof ContinueStmt n) {
+            child(open(Kind.ContinueStmt), n.value());
+        } else if (node instanceof ImplReturnStmt n) {
+            child(open(Kind.ImplReturnStmt), n.value());
+        } else if (node instanceof SwitchStmt n) {
+            at = open(Kind.SwitchStmt);
+            child(at, n.value());
+            list(at + 1, n.cases());
+        } else if (node instanceof EnumStmt n) {
+            at = open(Kind.EnumStmt);
+            list(at, n.mods());
+            child(at + 1, n.name());
+            list(at + 2, n.fields());
+        } else if (node instanceof ClassStmt n) {
+            at = open(Kind.ClassStmt);
+            list(at, n.mods());
+            child(at + 1, n.name());
+            list(at + 2, n.fields());
+            list(at + 3, n.methods());
+        } else if (node instanceof InterfStmt n) {
+            at = open(Kind.InterfStmt);
+            list(at, n.mods());
+            child(at + 1, n.name());
+            list(at + 2, n.methods());
+        } else if (node instanceof PrimitiveStmt n) {
+            at = open(Kind.PrimitiveStmt);
+            list(at, n.mods());
+            child(at + 1, n.name());
+            child(at + 2, n.type());
+            list(at + 3, n.methods());
+        } else if (node instanceof ImplStmt n) {
+            at = open(Kind.ImplStmt);
+            list(at, n.mods());
+            child(at + 1, n.clz());
+            child(at + 2, n.interf());
+            list(at + 3, n.methods());
+        } else if (node instanceof IdentifierL n) {
+            at = open(Kind.IdentifierL);
+            data[at] = addToken(n.tok());
+            data[at + 1] = n.symbol();
+        } else if (node instanceof CharL n) {
+            at = open(Kind.CharL);
+            data[at] = addToken(n.tok());
+            data[at + 1] = n.value();
+        } else if (node instanceof StringL n) {
+            at = open(Kind.StringL);
+            data[at] = addToken(n.tok());
+            data[at + 1] = addString(n.value());
+        } else if (node instanceof NumberL n) {
+            at = open(Kind.NumberL);
+            data[at] = addToken(n.tok());
+        } else if (node instanceof ArrayL n) {
+            list(open(Kind.ArrayL), n.value());
+        } else if (node instanceof BoolL n) {
+            at = open(Kind.BoolL);
+            data[at] = addToken(n.tok());
+            data[at + 1] = n.value() ? 1 : 0;
+        } else if (node instanceof NullL n) {
+            at = open(Kind.NullL);
+            data[at] = addToken(n.tok());
+        } else if (node instanceof BaseT n) {
+            at = open(Kind.BaseT);
+            data[at] = addToken(n.tok());
+        } else if (node instanceof TrashT) {
+            open(Kind.TrashT);
+        } else if (node instanceof ArrayT n) {
+            child(open(Kind.ArrayT), n.child());
+        } else if (node instanceof SizedArrayT n) {
+            at = open(Kind.SizedArrayT);
+            child(at, n.child());
+            child(at + 1, n.size());
+        } else if (node instanceof GenericT n) {
+            at = open(Kind.GenericT);
+            child(at, n.child());
+            list(at + 1, n.generics());
+        } else if (node instanceof ExtendedT n) {
+            at = open(Kind.ExtendedT);
+            child(at, n.child());
+            list(at + 1, n.extending());
+        } else if (node instanceof NullableT n) {
+            child(open(Kind.NullableT), n.child());
+        } else if (node instanceof FnT n) {
+            at = open(Kind.FnT);
+            list(at, n.args());
+            child(at + 1, n.rettype());
+        } else if (node instanceof SwitchExprCase n) {
+            at = open(Kind.SwitchExprCase);
+            list(at, n.conditions());
+            child(at + 1, n.body());
+        } else if (node instanceof SwitchCase n) {
+            at = open(Kind.SwitchCase);
+            list(at, n.conditions());
+            child(at + 1, n.body());
+        } else if (node instanceof ClassField n) {
+            at = open(Kind.ClassField);
+            list(at, n.mods());
+            child(at + 1, n.name());
+            child(at + 2, n.type());
+            child(at + 3, n.init());
+        } else if (node instanceof ClassMethod n) {
+            at = open(Kind.ClassMethod);
+            list(at, n.mods());
+            child(at + 1, n.name());
+            list(at + 2, n.args());
+            child(at + 3, n.rettype());
+            data[at + 4] = n.isInline() ? 1 : 0;
+            child(at + 5, n.body());
+        } else if (node instanceof Method n) {
+            at = open(Kind.Method);
+            child(at, n.name());
+            list(at + 1, n.args());
+            child(at + 2, n.rettype());
+        } else if (node instanceof Arg n) {
+            at = open(Kind.Arg);
+            child(at, n.name());
+            child(at + 1, n.type());
+        } else if (node instanceof InstanceM) {
+            open(Kind.InstanceM);
+        } else if (node instanceof PrivateM) {
+            open(Kind.PrivateM);
+        } else if (node instanceof ProtectedM) {
+            open(Kind.ProtectedM);
+        } else if (node instanceof FinalM) {
+            open(Kind.FinalM);
+        } else if (node instanceof NativeM n) {
+            at = open(Kind.NativeM);
+            data[at] = ordinal(n.abi());
+            child(at + 1, n.name());
+            child(at + 2, n.module());
+        } else
+            throw new IllegalArgumentException("can't store " + node.getClass().getSimpleName() + ".");
+    }
+
+    private static int ordinal(Enum<?> e) {
+        return e == null ? -1 : e.ordinal();
+    }
+
+    private void ensureLists(int n) {
+        if (listSize + n > lists.length)
+            lists = Arrays.copyOf(lists, Math.max(listSize + n, lists.length * 2));
+    }
+
+    private int addToken(Token tok) {
+        if (tok == null)
+            return -1;
+        if (tokens == tokTypes.length) {
+            int n = tokens * 2;
+            tokTypes = Arrays.copyOf(tokTypes, n);
+            tokSymbols = Arrays.copyOf(tokSymbols, n);
+            tokOffsets = Arrays.copyOf(tokOffsets, n);
+            tokLengths = Arrays.copyOf(tokLengths, n);
+            tokLines = Arrays.copyOf(tokLines, n);
+            tokColumns = Arrays.copyOf(tokColumns, n);
+            tokImages = Arrays.copyOf(tokImages, n);
+        }
+        tokTypes[tokens] = (byte)tok.getType().ordinal();
+        tokSymbols[tokens] = tok.getSymbol();
+        tokOffsets[tokens] = tok.getOffset();
+        tokLengths[tokens] = tok.getLength();
+        tokLines[tokens] = tok.getLine();
+        tokColumns[tokens] = tok.getColumn();
+        tokImages[tokens] = tok.getImage();
+        return tokens++;
+    }
+
+    private int addString(String s) {
+        if (s == null)
+            return -1;
+        if (stringCount == strings.length)
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        strings[stringCount] = s;
+        return stringCount++;
+    }
+
+    // drops the room left for growing, and the stacks.
+    private void trim() {
+        kinds = Arrays.copyOf(kinds, nodes);
+        starts = Arrays.copyOf(starts, nodes);
+        data = Arrays.copyOf(data, size);
+        lists = Arrays.copyOf(lists, listSize);
+        tokTypes = Arrays.copyOf(tokTypes, tokens);
+        tokSymbols = Arrays.copyOf(tokSymbols, tokens);
+        tokOffsets = Arrays.copyOf(tokOffsets, tokens);
+        tokLengths = Arrays.copyOf(tokLengths, tokens);
+        tokLines = Arrays.copyOf(tokLines, tokens);
+        tokColumns = Arrays.copyOf(tokColumns, tokens);
+        tokImages = Arrays.copyOf(tokImages, tokens);
+        strings = Arrays.copyOf(strings, stringCount);
+        pending = null;
+        targets = null;
+        children = null;
+        childTargets = null;
+        body = null;
+    }
+}
@@ -0,0 +1,346 @@
+package src.parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+import src.lexer.Token;
+
+import static src.parser.Node.*;
+
+/**
+ * Dumps nodes to an {@link Appendable}, as the s-expressions of
+ * {@code toString()} or as JSON. Works off an explicit stack, so a deep
+ * tree can't overflow and the output is written once, in linear time.
+ */
+public final class AstPrinter {
+    // markers on the work stack, everything else is text or a node.
+    private static final Object NULL = new Object(), IN = new Object(), OUT = new Object(), BODY = new Object(), END = new Object();
+    private static final ClassValue<RecordComponent[]> COMPONENTS = new ClassValue<>() {
+        @Override
+        protected RecordComponent[] computeValue(Class<?> type) {
+            return type.getRecordComponents();
+        }
+    };
+
+    private final Appendable out;
+    private final boolean json;
+    private final ArrayDeque<Object> work = new ArrayDeque<>();
+    private final ArrayList<Object> parts = new ArrayList<>();
+    // indentation in steps of 4, the next char starts a line.
+    private int depth;
+    private boolean lineStart;
+    private int newlines, bodyStart;
+
+    private AstPrinter(Appendable out, boolean json) {
+        this.out = out;
+        this.json = json;
+    }
+
+    /** Writes {@code node} the way its {@code toString()} reads. */
+    public static void print(final Object node, final Appendable out) throws IOException {
+        new AstPrinter(out, false).run(node);
+    }
+
+    /**
+     * Writes {@code node} as JSON on one line. A record is an object with
+     * its "kind" and its components by name, a token is its type, image,
+     * line and column.
+     */
+    public static void printJson(final Object node, final Appendable out) throws IOException {
+        new AstPrinter(out, true).run(node);
+    }
+
+    public static String toString(final Object node) {
+        var s = new StringBuilder();
+        try {
+            print(node, s);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return s.toString();
+    }
+
+    private void run(Object node) throws IOException {
+        work.push(node == null ? NULL : node);
+        while (!work.isEmpty()) {
+            Object item = work.pop();
+            if (item instanceof String s)
+                emit(s);
+            else if (item == NULL)
+                emit("null");
+            else if (item == IN)
+                depth++;
+            else if (item == OUT)
+                depth--;
+            else if (item == BODY)
+                bodyStart = newlines;
+            else if (item == END)
+                emit("end, lines " + (newlines - bodyStart));
+            else {
+                parts.clear();
+                if (json)
+                    expandJson(item);
+                else
+                    expand(item);
+                for (int i = parts.size() - 1; i >= 0; i--)
+                    work.push(parts.get(i));
+            }
+        }
+    }
+
+    private void emit(String s) throws IOException {
+        int from = 0;
+        while (from < s.length()) {
+            if (lineStart && s.charAt(from) != '\n') {
+                for (int i = 0; i < depth; i++)
+                    out.append("    ");
+                lineStart = false;
+            }
+            int nl = s.indexOf('\n', from);
+            int to = nl < 0 ? s.length() : nl + 1;
+            out.append(s, from, to);
+            if (nl >= 0) {
+                newlines++;
+                lineStart = true;
+            }
+            from = to;
+        }
+    }
+
+    private AstPrinter add(Object part) {
+        parts.add(part == null ? NULL : part);
+        return this;
+    }
+
+    private AstPrinter join(Object[] items, String sep) {
+        for (int i = 0; i < items.length; i++) {
+            if (i > 0)
+                add(sep);
+            add(items[i]);
+        }
+        return this;
+    }
+
+    // every item on its own lines, one step in.
+    private AstPrinter block(Object[] items, String suffix) {
+        for (var item : items) {
+            add(IN).add(item);
+            if (!suffix.isEmpty())
+                add(suffix);
+            add("\n").add(OUT);
+        }
+        return this;
+    }
+
+    private AstPrinter image(Token tok) {
+        return add(tok == null ? null : String.valueOf(tok.getImage()));
+    }
+
+    private void expand(Object node) {
+        if (node instanceof Program n) {
+            add("Program: source \"" + n.source() + "\", code\n").add(BODY);
+            for (var stmt : n.body())
+                add(stmt).add("\n");
+            add(END);
+        } else if (node instanceof UnaryOpExpr n)
+            add("(" + n.op() + " ").add(n.expr()).add(")");
+        else if (node instanceof BinOpExpr n)
+            add("(").add(n.left()).add(" " + n.op() + " ").add(n.right()).add(")");
+        else if (node instanceof MethodCallExpr n)
+            add(n.fn()).add(" call [").join(n.args(), ", ").add("]");
+        else if (node instanceof IfExpr n)
+            add("if (").add(n.condition()).add(") ").add(n.body()).add(" else ").add(n.otherwise());
+        else if (node instanceof LoopExpr n)
+            loop(n.condition()).add(n.body());
+        else if (node instanceof LoopElseExpr n)
+            loop(n.condition()).add(n.body()).add(" else ").add(n.otherwise());
+        else if (node instanceof SwitchExpr n)
+            add("switch (").add(n.condition()).add(") {\n").block(n.cases(), "").add("}");
+        else if (node instanceof BreakIfExpr n)
+            add("break!(").add(n.condition()).add(") ").add(n.value());
+        else if (node instanceof ContinueIfExpr n)
+            add("continue!(").add(n.condition()).add(") ").add(n.value());
+        else if (node instanceof ReturnIfExpr n)
+            add("return!(").add(n.condition()).add(") ").add(n.value());
+        else if (node instanceof FnExpr n) {
+            add("fn:(").join(n.args(), ", ").add(") ");
+            if (n.rettype() != null)
+                add(n.rettype()).add(" ");
+            add(n.body());
+        } else if (node instanceof EmptyStmt)
+            add(";");
+        else if (node instanceof ExprStmt n)
+            add(n.expr()).add(";");
+        else if (node instanceof BlockStmt n)
+            add("{\n").block(n.stmts(), "").add("}");
+        else if (node instanceof IfStmt n) {
+            add("if (").add(n.condition()).add(") ").add(n.body());
+            if (n.otherwise() != null)
+                add(" else ").add(n.otherwise());
+        } else if (node instanceof LoopStmt n)
+            loop(n.condition()).add(n.body());
+        else if (node instanceof BreakStmt n) {
+            if (n.value() == null)
+                add("break;");
+            else
+                add("break ").add(n.value()).add(";");
+        } else if (node instanceof ReturnStmt n)
+            add("return ").add(n.value()).add(";");
+        else if (node instanceof ContinueStmt n)
+            add("continue ").add(n.value()).add(";");
+        else if (node instanceof ImplReturnStmt n)
+            add("iret ").add(n.value());
+        else if (node instanceof SwitchStmt n)
+            add("switch (").add(n.value()).add(") {\n").block(n.cases(), "").add("}");
+        else if (node instanceof EnumStmt n)
+            join(n.mods(), "").add("enum ").add(n.name()).add(" {\n").block(n.fields(), ";").add("}");
+        else if (node instanceof ClassStmt n)
+            join(n.mods(), "").add("class ").add(n.name()).add(" {\n")
+                .block(n.fields(), "").block(n.methods(), "").add("}");
+        else if (node instanceof InterfStmt n)
+            join(n.mods(), "").add("interf ").add(n.name()).add(" {\n").block(n.methods(), "").add("}");
+        else if (node instanceof PrimitiveStmt n)
+            join(n.mods(), "").add("primitive ").add(n.name()).add("(").add(n.type()).add(") {\n")
+                .block(n.methods(), "").add("}");
+        else if (node instanceof ImplStmt n)
+            join(n.mods(), "").add("impl ").add(n.clz()).add(" for ").add(n.interf()).add(" {\n")
+                .block(n.methods(), "").add("}");
+        else if (node instanceof IdentifierL n)
+            image(n.tok());
+        else if (node instanceof CharL n)
+            image(n.tok());
+        else if (node instanceof StringL n)
+            image(n.tok());
+        else if (node instanceof NumberL n)
+            image(n.tok());
+        else if (node instanceof ArrayL n) {
+            add("[ ");
+            for (var value : n.value())
+                add(value).add(" ");
+            add("]");
+        }
+        else if (node instanceof BoolL n)
+            image(n.tok());
+        else if (node instanceof NullL n)
+            image(n.tok());
+        else if (node instanceof BaseT n)
+            image(n.tok());
+        else if (node instanceof TrashT)
+            add("_");
+        else if (node instanceof ArrayT n)
+            add(n.child()).add("[]");
+        else if (node instanceof SizedArrayT n)
+            add(n.child()).add("[").add(n.size()).add("]");
+        else if (node instanceof GenericT n)
+            add(n.child()).add("<").join(n.generics(), ", ").add(">");
+        else if (node instanceof ExtendedT n)
+            add(n.child()).add(": ").join(n.extending(), ", ");
+        else if (node instanceof NullableT n)
+            add(n.child()).add("?");
+        else if (node instanceof FnT n)
+            add("fn:(").join(n.args(), ", ").add(") ").add(n.rettype());
+        else if (node instanceof SwitchExprCase n)
+            add("case ").join(n.conditions(), ", ").add(" -> ").add(n.body());
+        else if (node instanceof SwitchCase n)
+            add("case ").join(n.conditions(), ", ").add(" -> ").add(n.body());
+        else if (node instanceof ClassField n) {
+            join(n.mods(), "").add(n.name());
+            if (n.type() != null)
+                add(":").add(n.type());
+            if (n.init() != null)
+                add(" = ").add(n.init());
+            add(";");
+        } else if (node instanceof ClassMethod n) {
+            join(n.mods(), "").add(n.name()).add("(").join(n.args(), ", ").add(")");
+            if (n.rettype() != null)
+                add(" ").add(n.rettype());
+            if (n.isInline())
+                add(":");
+            add(" ").add(n.body());
+        } else if (node instanceof Method n)
+            add(n.name()).add("(").join(n.args(), ", ").add(")").add(n.rettype());
+        else if (node instanceof Arg n)
+            add(n.name()).add(": ").add(n.type());
+        else if (node instanceof InstanceM)
+            add(".");
+        else if (node instanceof PrivateM)
+            add("priv ");
+        else if (node instanceof ProtectedM)
+            add("prot ");
+        else if (node instanceof FinalM)
+            add("final ");
+        else if (node instanceof NativeM n)
+            add("native (" + n.abi() + ") \"").add(n.name()).add("\" : ").add(n.module()).add(" ");
+        else
+            add(String.valueOf(node));
+    }
+
+    private AstPrinter loop(Expr condition) {
+        return condition == null ? add("loop ") : add("loop!(").add(condition).add(") ");
+    }
+
+    private void expandJson(Object node) {
+        if (node instanceof Token tok) {
+            add("{\"type\":" + quote(tok.getType().name()) + ",\"image\":" + quote(tok.getImage())
+                + ",\"line\":" + tok.getLine() + ",\"column\":" + tok.getColumn() + "}");
+        } else if (node instanceof Object[] items) {
+            add("[");
+            for (int i = 0; i < items.length; i++) {
+                if (i > 0)
+                    add(",");
+                value(items[i]);
+            }
+            add("]");
+        } else if (node instanceof Record) {
+            add("{\"kind\":" + quote(node.getClass().getSimpleName()));
+            for (var component : COMPONENTS.get(node.getClass())) {
+                add(",\"" + component.getName() + "\":");
+                try {
+                    value(component.getAccessor().invoke(node));
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            add("}");
+        } else
+            value(node);
+    }
+
+    private void value(Object v) {
+        if (v == null)
+            add("null");
+        else if (v instanceof String s)
+            add(quote(s));
+        else if (v instanceof Character c)
+            add(quote(c.toString()));
+        else if (v instanceof Enum<?> e)
+            add(quote(e.name()));
+        else if (v instanceof Number || v instanceof Boolean)
+            add(v.toString());
+        else
+            add(v);
+    }
+
+    private static String quote(String s) {
+        if (s == null)
+            return "null";
+        var b = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                b.append('\\').append(c);
+            else if (c == '\n')
+                b.append("\\n");
+            else if (c == '\t')
+                b.append("\\t");
+            else if (c < 0x20)
+                b.append("\\u%04x".formatted((int)c));
+            else
+                b.append(c);
+        }
+        return b.append('"').toString();
+    }
+}
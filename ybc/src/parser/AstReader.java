@@ -0,0 +1,407 @@
+package src.parser;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+import src.lexer.SymbolTable;
+import src.lexer.Token;
+import src.lexer.TokenType;
+
+import static src.parser.Node.*;
+
+/**
+ * Reads what an {@link AstWriter} wrote, straight from a buffer, which can
+ * be a mapped file. Symbols keep the ids they were written with, or with a
+ * {@link SymbolTable} are interned into it so the nodes of a module loaded
+ * this way share ids with the rest of the compilation.
+ */
+public final class AstReader {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final Op[] OPS = Op.values();
+    private static final ABI[] ABIS = ABI.values();
+    // what a record is read as, component by component: a child node, an
+    // array of the given element type, or one of these values.
+    private static final Object NODE = new Object(), OP = new Object(), TOKEN = new Object(), SYMBOL = new Object(),
+        STRING = new Object(), BOOL = new Object(), CHAR = new Object(), NATIVE_ABI = new Object();
+    // by tag - 1.
+    private static final Object[][] SLOTS = new Object[AstWriter.KINDS.length][];
+
+    static {
+        for (int i = 0; i < SLOTS.length; i++)
+            SLOTS[i] = slots(AstWriter.KINDS[i]);
+    }
+
+    private final ByteBuffer buf;
+    private final SymbolTable table;
+    // by ref - 1, the id and the name of every symbol read so far.
+    private int[] ids = new int[64];
+    private String[] names = new String[64];
+    private int symbols;
+    private String[] strings = new String[64];
+    private int count;
+    private int offset, line;
+
+    public AstReader(final ByteBuffer buf) throws IOException {
+        this(buf, null);
+    }
+
+    public AstReader(final ByteBuffer buf, final SymbolTable table) throws IOException {
+        this.buf = buf;
+        this.table = table;
+        try {
+            if (buf.getInt() != AstWriter.MAGIC)
+                throw new IOException("not an AST stream.");
+            int format = readInt();
+            if (format != AstWriter.FORMAT)
+                throw new IOException("unknown AST format " + format + ".");
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated AST stream.", e);
+        }
+    }
+
+    public boolean hasNext() {
+        return buf.hasRemaining();
+    }
+
+    /** The next node written by {@link AstWriter#write(Node)}. */
+    public Node read() throws IOException {
+        try {
+            return readNode();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException
+                | ArrayStoreException | NegativeArraySizeException e) {
+            throw new IOException("broken AST stream.", e);
+        }
+    }
+
+    private static Object[] slots(Class<?> kind) {
+        if (kind == Program.class)
+            return new Object[] { STRING, Stmt.class };
+        else if (kind == UnaryOpExpr.class)
+            return new Object[] { OP, NODE };
+        else if (kind == BinOpExpr.class)
+            return new Object[] { OP, NODE, NODE };
+        else if (kind == MethodCallExpr.class)
+            return new Object[] { NODE, Expr.class };
+        else if (kind == IfExpr.class || kind == LoopElseExpr.class || kind == IfStmt.class)
+            return new Object[] { NODE, NODE, NODE };
+        else if (kind == LoopExpr.class || kind == BreakIfExpr.class || kind == ContinueIfExpr.class
+                || kind == ReturnIfExpr.class || kind == LoopStmt.class || kind == SizedArrayT.class || kind == Arg.class)
+            return new Object[] { NODE, NODE };
+        else if (kind == SwitchExpr.class)
+            return new Object[] { NODE, SwitchExprCase.class };
+        else if (kind == FnExpr.class)
+            return new Object[] { Arg.class, NODE, NODE };
+        else if (kind == ExprStmt.class || kind == BreakStmt.class || kind == ReturnStmt.class || kind == ContinueStmt.class
+                || kind == ImplReturnStmt.class || kind == ArrayT.class || kind == NullableT.class)
+            return new Object[] { NODE };
+        else if (kind == BlockStmt.class)
+            return new Object[] { Stmt.class };
+        else if (kind == SwitchStmt.class)
+            return new Object[] { NODE, SwitchCase.class };
+        else if (kind == EnumStmt.class)
+            return new Object[] { Modifier.class, NODE, IdentifierL.class };
+        else if (kind == ClassStmt.class)
+            return new Object[] { Modifier.class, NODE, ClassField.class, ClassMethod.class };
+        else if (kind == InterfStmt.class)
+            return new Object[] { Modifier.class, NODE, Method.class };
+        else if (kind == PrimitiveStmt.class || kind == ImplStmt.class)
+            return new Object[] { Modifier.class, NODE, NODE, ClassMethod.class };
+        else if (kind == IdentifierL.class)
+            return new Object[] { TOKEN, SYMBOL };
+        else if (kind == CharL.class)
+            return new Object[] { TOKEN, CHAR };
+        else if (kind == StringL.class)
+            return new Object[] { TOKEN, STRING };
+        else if (kind == NumberL.class || kind == NullL.class || kind == BaseT.class)
+            return new Object[] { TOKEN };
+        else if (kind == ArrayL.class)
+            return new Object[] { Expr.class };
+        else if (kind == BoolL.class)
+            return new Object[] { TOKEN, BOOL };
+        else if (kind == GenericT.class || kind == ExtendedT.class)
+            return new Object[] { NODE, TypeExpr.class };
+        else if (kind == FnT.class)
+            return new Object[] { Arg.class, NODE };
+        else if (kind == SwitchExprCase.class || kind == SwitchCase.class)
+            return new Object[] { Expr.class, NODE };
+        else if (kind == ClassField.class)
+            return new Object[] { Modifier.class, NODE, NODE, NODE };
+        else if (kind == ClassMethod.class)
+            return new Object[] { Modifier.class, NODE, Arg.class, NODE, BOOL, NODE };
+        else if (kind == Method.class)
+            return new Object[] { NODE, Arg.class, NODE };
+        else if (kind == NativeM.class)
+            return new Object[] { NATIVE_ABI, NODE, NODE };
+        return new Object[0]; // EmptyStmt, TrashT and the modifiers.
+    }
+
+    // a record whose components are being read, or an array being filled.
+    private static final class Frame {
+        final int kind; // tag - 1, or -1 for an array
+        final Object[] values;
+        int next;
+
+        Frame(int kind, Object[] values) {
+            this.kind = kind;
+            this.values = values;
+        }
+    }
+
+    // reads a tree off a stack of frames, so a deep one can't overflow. A
+    // record is built once its last component is read.
+    @SuppressWarnings("unchecked")
+    private <T> T readNode() throws IOException {
+        ArrayDeque<Frame> frames = new ArrayDeque<>();
+        Object value = null;
+        boolean done = readTag(frames);
+        while (true) {
+            if (done) {
+                if (frames.isEmpty())
+                    return (T)value;
+                Frame f = frames.peek();
+                f.values[f.next++] = value;
+                done = false;
+            }
+            Frame f = frames.peek();
+            if (f.next == f.values.length) {
+                frames.pop();
+                value = f.kind < 0 ? f.values : build(AstWriter.KINDS[f.kind], f.values);
+                done = true;
+                continue;
+            }
+            Object slot = f.kind < 0 ? NODE : SLOTS[f.kind][f.next];
+            if (slot == NODE) {
+                done = readTag(frames);
+                value = null;
+            } else if (slot instanceof Class<?> type) {
+                int n = readCount();
+                if (n == 0)
+                    f.values[f.next++] = null;
+                else
+                    frames.push(new Frame(-1, (Object[])Array.newInstance(type, n - 1)));
+            } else
+                f.values[f.next++] = readValue(slot);
+        }
+    }
+
+    // pushes the frame of the next record, false, or true for a null one.
+    private boolean readTag(ArrayDeque<Frame> frames) throws IOException {
+        int tag = buf.get() & 0xff;
+        if (tag == 0)
+            return true;
+        if (tag > AstWriter.KINDS.length)
+            throw new IOException("bad node tag " + tag + ".");
+        frames.push(new Frame(tag - 1, new Object[SLOTS[tag - 1].length]));
+        return false;
+    }
+
+    private Object readValue(Object slot) throws IOException {
+        if (slot == OP)
+            return OPS[readInt()];
+        else if (slot == TOKEN)
+            return readToken();
+        else if (slot == SYMBOL)
+            return readSymbol();
+        else if (slot == STRING)
+            return readString();
+        else if (slot == BOOL)
+            return buf.get() != 0;
+        else if (slot == CHAR)
+            return (char)readInt();
+        int abi = readInt();
+        return abi == 0 ? null : ABIS[abi - 1];
+    }
+
+    private static Object build(Class<?> kind, Object[] v) {
+        if (kind == Program.class)
+            return new Program((String)v[0], (Stmt[])v[1]);
+        else if (kind == UnaryOpExpr.class)
+            return new UnaryOpExpr((Op)v[0], (Expr)v[1]);
+        else if (kind == BinOpExpr.class)
+            return new BinOpExpr((Op)v[0], (Expr)v[1], (Expr)v[2]);
+        else if (kind == MethodCallExpr.class)
+            return new MethodCallExpr((Expr)v[0], (Expr[])v[1]);
+        else if (kind == IfExpr.class)
+            return new IfExpr((Expr)v[0], (Expr)v[1], (Expr)v[2]);
+        else if (kind == LoopExpr.class)
+            return new LoopExpr((Expr)v[0], (Expr)v[1]);
+        else if (kind == LoopElseExpr.class)
+            return new LoopElseExpr((Expr)v[0], (Expr)v[1], (Expr)v[2]);
+        else if (kind == SwitchExpr.class)
+            return new SwitchExpr((Expr)v[0], (SwitchExprCase[])v[1]);
+        else if (kind == BreakIfExpr.class)
+            return new BreakIfExpr((Expr)v[0], (Expr)v[1]);
+        else if (kind == ContinueIfExpr.class)
+            return new ContinueIfExpr((Expr)v[0], (Expr)v[1]);
+        else if (kind == ReturnIfExpr.class)
+            return new ReturnIfExpr((Expr)v[0], (Expr)v[1]);
+        else if (kind == FnExpr.class)
+            return new FnExpr((Arg[])v[0], (TypeExpr)v[1], (Stmt)v[2]);
+        else if (kind == EmptyStmt.class)
+            return new EmptyStmt();
+        else if (kind == ExprStmt.class)
+            return new ExprStmt((Expr)v[0]);
+        else if (kind == BlockStmt.class)
+            return new BlockStmt((Stmt[])v[0]);
+        else if (kind == IfStmt.class)
+            return new IfStmt((Expr)v[0], (Stmt)v[1], (Stmt)v[2]);
+        else if (kind == LoopStmt.class)
+            return new LoopStmt((Expr)v[0], (Stmt)v[1]);
+        else if (kind == BreakStmt.class)
+            return new BreakStmt((Expr)v[0]);
+        else if (kind == ReturnStmt.class)
+            return new ReturnStmt((Expr)v[0]);
+        else if (kind == ContinueStmt.class)
+            return new ContinueStmt((Expr)v[0]);
+        else if (kind == ImplReturnStmt.class)
+            return new ImplReturnStmt((Expr)v[0]);
+        else if (kind == SwitchStmt.class)
+            return new SwitchStmt((Expr)v[0], (SwitchCase[])v[1]);
+        else if (kind == EnumStmt.class)
+            return new EnumStmt((Modifier[])v[0], (BaseT)v[1], (IdentifierL[])v[2]);
+        else if (kind == ClassStmt.class)
+            return new ClassStmt((Modifier[])v[0], (TypeExpr)v[1], (ClassField[])v[2], (ClassMethod[])v[3]);
+        else if (kind == InterfStmt.class)
+            return new InterfStmt((Modifier[])v[0], (TypeExpr)v[1], (Method[])v[2]);
+        else if (kind == PrimitiveStmt.class)
+            return new PrimitiveStmt((Modifier[])v[0], (TypeExpr)v[1], (TypeExpr)v[2], (ClassMethod[])v[3]);
+        else if (kind == ImplStmt.class)
+            return new ImplStmt((Modifier[])v[0], (TypeExpr)v[1], (TypeExpr)v[2], (ClassMethod[])v[3]);
+        else if (kind == IdentifierL.class)
+            return new IdentifierL((Token)v[0], (Integer)v[1]);
+        else if (kind == CharL.class)
+            return new CharL((Token)v[0], (Character)v[1]);
+        else if (kind == StringL.class)
+            return new StringL((Token)v[0], (String)v[1]);
+        else if (kind == NumberL.class)
+            return new NumberL((Token)v[0]);
+        else if (kind == ArrayL.class)
+            return new ArrayL((Expr[])v[0]);
+        else if (kind == BoolL.class)
+            return new BoolL((Token)v[0], (Boolean)v[1]);
+        else if (kind == NullL.class)
+            return new NullL((Token)v[0]);
+        else if (kind == BaseT.class)
+            return new BaseT((Token)v[0]);
+        else if (kind == TrashT.class)
+            return new TrashT();
+        else if (kind == ArrayT.class)
+            return new ArrayT((TypeExpr)v[0]);
+        else if (kind == SizedArrayT.class)
+            return new SizedArrayT((TypeExpr)v[0], (NumberL)v[1]);
+        else if (kind == GenericT.class)
+            return new GenericT((TypeExpr)v[0], (TypeExpr[])v[1]);
+        else if (kind == ExtendedT.class)
+            return new ExtendedT((TypeExpr)v[0], (TypeExpr[])v[1]);
+        else if (kind == NullableT.class)
+            return new NullableT((TypeExpr)v[0]);
+        else if (kind == FnT.class)
+            return new FnT((Arg[])v[0], (TypeExpr)v[1]);
+        else if (kind == SwitchExprCase.class)
+            return new SwitchExprCase((Expr[])v[0], (Expr)v[1]);
+        else if (kind == SwitchCase.class)
+            return new SwitchCase((Expr[])v[0], (Stmt)v[1]);
+        else if (kind == ClassField.class)
+            return new ClassField((Modifier[])v[0], (IdentifierL)v[1], (TypeExpr)v[2], (Expr)v[3]);
+        else if (kind == ClassMethod.class)
+            return new ClassMethod((Modifier[])v[0], (IdentifierL)v[1], (Arg[])v[2], (TypeExpr)v[3], (Boolean)v[4], (Stmt)v[5]);
+        else if (kind == Method.class)
+            return new Method((IdentifierL)v[0], (Arg[])v[1], (TypeExpr)v[2]);
+        else if (kind == Arg.class)
+            return new Arg((IdentifierL)v[0], (TypeExpr)v[1]);
+        else if (kind == InstanceM.class)
+            return new InstanceM();
+        else if (kind == PrivateM.class)
+            return new PrivateM();
+        else if (kind == ProtectedM.class)
+            return new ProtectedM();
+        else if (kind == FinalM.class)
+            return new FinalM();
+        return new NativeM((ABI)v[0], (StringL)v[1], (StringL)v[2]);
+    }
+
+    private Token readToken() throws IOException {
+        int type = readInt();
+        if (type == 0)
+            return null;
+        if (type > TYPES.length)
+            throw new IOException("bad token type " + type + ".");
+        TokenType tt = TYPES[type - 1];
+        int ref = readSymbolRef();
+        int image = readInt();
+        String s = image == 0 ? null
+            : image == 1 ? (ref > 0 ? names[ref - 1] : tt.image)
+            : readString();
+        int symbol = ref > 0 ? ids[ref - 1] : -1;
+        offset += unzigzag(readInt());
+        int length = readInt();
+        line += unzigzag(readInt());
+        return new Token(tt, s, symbol, offset, length, line, readInt());
+    }
+
+    private int readSymbol() throws IOException {
+        int ref = readSymbolRef();
+        return ref > 0 ? ids[ref - 1] : -1;
+    }
+
+    // reads a symbol ref, defining the symbol if it's the first use.
+    private int readSymbolRef() throws IOException {
+        int ref = readInt();
+        if (ref <= symbols)
+            return ref;
+        if (ref != symbols + 1)
+            throw new IOException("bad symbol ref " + ref + ".");
+        if (symbols == ids.length) {
+            ids = Arrays.copyOf(ids, symbols * 2);
+            names = Arrays.copyOf(names, symbols * 2);
+        }
+        int id = readInt();
+        String name = readString();
+        names[symbols] = name;
+        ids[symbols++] = table != null && name != null ? table.intern(name) : id;
+        return ref;
+    }
+
+    private String readString() throws IOException {
+        int ref = readInt();
+        if (ref == 0)
+            return null;
+        if (ref <= count)
+            return strings[ref - 1];
+        if (ref != count + 1)
+            throw new IOException("bad string ref " + ref + ".");
+        char[] chars = new char[readCount()];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char)readInt();
+        if (count == strings.length)
+            strings = Arrays.copyOf(strings, count * 2);
+        return strings[count++] = new String(chars);
+    }
+
+    // a count of items to come, each of which takes a byte at least, so a
+    // broken one can't have us allocate more than the stream could hold.
+    private int readCount() throws IOException {
+        int n = readInt();
+        if (n < 0 || n > buf.remaining() + 1)
+            throw new IOException("bad count " + n + " with " + buf.remaining() + " bytes left.");
+        return n;
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private int readInt() {
+        int n = 0;
+        for (int shift = 0;; shift += 7) {
+            int b = buf.get();
+            n |= (b & 0x7f) << shift;
+            if (b >= 0)
+                return n;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package src.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import src.lexer.Token;
+import src.lexer.TokenType;
+
+import static src.parser.Node.*;
+
+/**
+ * Streams nodes in the binary AST format, read back by {@link AstReader}.
+ * <p>
+ * The stream starts with {@link #MAGIC} and {@link #FORMAT}, then holds one
+ * record per {@link #write(Node)}. A record is a tag byte, see
+ * {@link #KINDS}, followed by its components in declaration order, a null
+ * component is tag 0. An array is its length + 1, 0 for null, then its
+ * items. Counts, enums and ints are unsigned LEB128 varints.
+ * <p>
+ * Symbols and strings are written once. A symbol is referred to by the
+ * order it first appeared in, the first time it's followed by its id and
+ * name. Strings work the same way. Token positions are written relative
+ * to the token before.
+ */
+public final class AstWriter implements Closeable {
+    public static final int MAGIC = 0x59424153; // YBAS
+    // bump whenever the encoding changes.
+    public static final int FORMAT = 2;
+
+    // the record types in tag order, a tag is the index + 1.
+    static final Class<?>[] KINDS = {
+        Program.class,
+        UnaryOpExpr.class, BinOpExpr.class, MethodCallExpr.class, IfExpr.class,
+        LoopExpr.class, LoopElseExpr.class, SwitchExpr.class, BreakIfExpr.class,
+        ContinueIfExpr.class, ReturnIfExpr.class, FnExpr.class,
+        EmptyStmt.class, ExprStmt.class, BlockStmt.class, IfStmt.class,
+        LoopStmt.class, BreakStmt.class, ReturnStmt.class, ContinueStmt.class,
+        ImplReturnStmt.class, SwitchStmt.class, EnumStmt.class, ClassStmt.class,
+        InterfStmt.class, PrimitiveStmt.class, ImplStmt.class,
+        IdentifierL.class, CharL.class, StringL.class, NumberL.class,
+        ArrayL.class, BoolL.class, NullL.class,
+        BaseT.class, TrashT.class, ArrayT.class, SizedArrayT.class,
+        GenericT.class, ExtendedT.class, NullableT.class, FnT.class,
+        SwitchExprCase.class, SwitchCase.class, ClassField.class,
+        ClassMethod.class, Method.class, Arg.class,
+        InstanceM.class, PrivateM.class, ProtectedM.class, FinalM.class, NativeM.class,
+    };
+    private static final Map<Class<?>, Integer> TAGS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < KINDS.length; i++)
+            TAGS.put(KINDS[i], i + 1);
+    }
+
+    // marks a null component on the work stack.
+    private static final Object NULL = new Object();
+
+    private final OutputStream out;
+    private final ArrayDeque<Object> work = new ArrayDeque<>();
+    private final byte[] buf = new byte[1 << 16];
+    private int size;
+    // symbol id -> its ref + 1, and the name it was written with.
+    private int[] refs = new int[64];
+    private String[] names = new String[64];
+    private int symbols;
+    private final Map<String, Integer> strings = new HashMap<>();
+    // the previous token, positions are written relative to it.
+    private int offset, line;
+
+    public AstWriter(final OutputStream out) throws IOException {
+        this.out = out;
+        writeRaw(MAGIC);
+        writeInt(FORMAT);
+    }
+
+    public void write(final Node node) throws IOException {
+        writeNode(node);
+    }
+
+    /** Writes what's buffered to the stream. */
+    public void flush() throws IOException {
+        out.write(buf, 0, size);
+        size = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    // writes a tree depth first off the work stack, so a deep one can't
+    // overflow. A node writes its tag and leading values, then pushes the
+    // rest: child nodes, arrays to write as a count and their items, and
+    // booleans to write as a byte.
+    private void writeNode(Object root) throws IOException {
+        work.clear();
+        work.push(root == null ? NULL : root);
+        while (!work.isEmpty()) {
+            Object item = work.pop();
+            if (item == NULL)
+                writeByte(0);
+            else if (item instanceof Object[] nodes) {
+                writeInt(nodes.length + 1);
+                then(nodes);
+            } else if (item instanceof Boolean b)
+                writeByte(b ? 1 : 0);
+            else
+                visit(item);
+        }
+    }
+
+    // pushes items to be written in order. A lone array is one item only
+    // when it's passed as an Object.
+    private void then(Object... items) {
+        for (int i = items.length - 1; i >= 0; i--)
+            work.push(items[i] == null ? NULL : items[i]);
+    }
+
+    private void visit(Object node) throws IOException {
+        Integer tag = TAGS.get(node.getClass());
+        if (tag == null)
+            throw new IllegalArgumentException("can't write " + node.getClass().getSimpleName() + ".");
+        writeByte(tag);
+        if (node instanceof Program n) {
+            writeString(n.source());
+            then((Object)n.body());
+        } else if (node instanceof UnaryOpExpr n) {
+            writeInt(n.op().ordinal());
+            then(n.expr());
+        } else if (node instanceof BinOpExpr n) {
+            writeInt(n.op().ordinal());
+            then(n.left(), n.right());
+        } else if (node instanceof MethodCallExpr n) {
+            then(n.fn(), n.args());
+        } else if (node instanceof IfExpr n) {
+            then(n.condition(), n.body(), n.otherwise());
+        } else if (node instanceof LoopExpr n) {
+            then(n.condition(), n.body());
+        } else if (node instanceof LoopElseExpr n) {
+            then(n.condition(), n.body(), n.otherwise());
+        } else if (node instanceof SwitchExpr n) {
+            then(n.condition(), n.cases());
+        } else if (node instanceof BreakIfExpr n) {
+            then(n.condition(), n.value());
+        } else if (node instanceof ContinueIfExpr n) {
+            then(n.condition(), n.value());
+        } else if (node instanceof ReturnIfExpr n) {
+            then(n.condition(), n.value());
+        } else if (node instanceof FnExpr n) {
+            then(n.args(), n.rettype(), n.body());
+        } else if (node instanceof EmptyStmt) {
+        } else if (node instanceof ExprStmt n) {
+            then(n.expr());
+        } else if (node instanceof BlockStmt n) {
+            then((Object)n.stmts());
+        } else if (node instanceof IfStmt n) {
+            then(n.condition(), n.body(), n.otherwise());
+        } else if (node instanceof LoopStmt n) {
+            then(n.condition(), n.body());
+        } else if (node instanceof BreakStmt n) {
+            then(n.value());
+        } else if (node instanceof ReturnStmt n) {
+            then(n.value());
+        } else if (node instanceof ContinueStmt n) {
+            then(n.value());
+        } else if (node instanceof ImplReturnStmt n) {
+            then(n.value());
+        } else if (node instanceof SwitchStmt n) {
+            then(n.value(), n.cases());
+        } else if (node instanceof EnumStmt n) {
+            then(n.mods(), n.name(), n.fields());
+        } else if (node instanceof ClassStmt n) {
+            then(n.mods(), n.name(), n.fields(), n.methods());
+        } else if (node instanceof InterfStmt n) {
+            then(n.mods(), n.name(), n.methods());
+        } else if (node instanceof PrimitiveStmt n) {
+            then(n.mods(), n.name(), n.type(), n.methods());
+        } else if (node instanceof ImplStmt n) {
+            then(n.mods(), n.clz(), n.interf(), n.methods());
+        } else if (node instanceof IdentifierL n) {
+            writeToken(n.tok());
+            writeSymbol(n.symbol(), n.tok() == null ? null : n.tok().getImage());
+        } else if (node instanceof CharL n) {
+            writeToken(n.tok());
+            writeInt(n.value());
+        } else if (node instanceof StringL n) {
+            writeToken(n.tok());
+            writeString(n.value());
+        } else if (node instanceof NumberL n) {
+            writeToken(n.tok());
+        } else if (node instanceof ArrayL n) {
+            then((Object)n.value());
+        } else if (node instanceof BoolL n) {
+            writeToken(n.tok());
+            writeByte(n.value() ? 1 : 0);
+        } else if (node instanceof NullL n) {
+            writeToken(n.tok());
+        } else if (node instanceof BaseT n) {
+            writeToken(n.tok());
+        } else if (node instanceof TrashT) {
+        } else if (node instanceof ArrayT n) {
+            then(n.child());
+        } else if (node instanceof SizedArrayT n) {
+            then(n.child(), n.size());
+        } else if (node instanceof GenericT n) {
+            then(n.child(), n.generics());
+        } else if (node instanceof ExtendedT n) {
+            then(n.child(), n.extending());
+        } else if (node instanceof NullableT n) {
+            then(n.child());
+        } else if (node instanceof FnT n) {
+            then(n.args(), n.rettype());
+        } else if (node instanceof SwitchExprCase n) {
+            then(n.conditions(), n.body());
+        } else if (node instanceof SwitchCase n) {
+            then(n.conditions(), n.body());
+        } else if (node instanceof ClassField n) {
+            then(n.mods(), n.name(), n.type(), n.init());
+        } else if (node instanceof ClassMethod n) {
+            then(n.mods(), n.name(), n.args(), n.rettype(), n.isInline(), n.body());
+        } else if (node instanceof Method n) {
+            then(n.name(), n.args(), n.rettype());
+        } else if (node instanceof Arg n) {
+            then(n.name(), n.type());
+        } else if (node instanceof NativeM n) {
+            writeInt(n.abi() == null ? 0 : n.abi().ordinal() + 1);
+            then(n.name(), n.module());
+        }
+    }
+
+    // type + 1 (0 is null), symbol, image, then the position. The image is
+    // 0 for null, 1 for the symbol's name or else the type's image, or a string.
+    private void writeToken(Token tok) throws IOException {
+        if (tok == null) {
+            writeByte(0);
+            return;
+        }
+        TokenType type = tok.getType();
+        String image = tok.getImage();
+        writeInt(type.ordinal() + 1);
+        int symbol = tok.getSymbol();
+        writeSymbol(symbol, image);
+        String implied = symbol >= 0 ? names[refs[symbol] - 1] : type.image;
+        if (image == null)
+            writeInt(0);
+        else if (image.equals(implied))
+            writeInt(1);
+        else {
+            writeInt(2);
+            writeString(image);
+        }
+        writeInt(zigzag(tok.getOffset() - offset));
+        writeInt(tok.getLength());
+        writeInt(zigzag(tok.getLine() - line));
+        writeInt(tok.getColumn());
+        offset = tok.getOffset();
+        line = tok.getLine();
+    }
+
+    // 0 for -1, else ref + 1 followed the first time by the id and the name.
+    private void writeSymbol(int symbol, String name) throws IOException {
+        if (symbol < 0) {
+            writeInt(0);
+            return;
+        }
+        if (symbol >= refs.length)
+            refs = Arrays.copyOf(refs, Math.max(symbol + 1, refs.length * 2));
+        if (refs[symbol] != 0) {
+            writeInt(refs[symbol]);
+            return;
+        }
+        if (symbols == names.length)
+            names = Arrays.copyOf(names, symbols * 2);
+        names[symbols] = name;
+        refs[symbol] = ++symbols;
+        writeInt(symbols);
+        writeInt(symbol);
+        writeString(name);
+    }
+
+    // 0 is null, else ref + 1 followed the first time by the length and chars.
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            writeInt(0);
+            return;
+        }
+        Integer ref = strings.get(s);
+        if (ref != null) {
+            writeInt(ref);
+            return;
+        }
+        strings.put(s, strings.size() + 1);
+        writeInt(strings.size());
+        writeInt(s.length());
+        for (int i = 0; i < s.length(); i++)
+            writeInt(s.charAt(i));
+    }
+
+    static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (size == buf.length) {
+            out.write(buf, 0, size);
+            size = 0;
+        }
+        buf[size++] = (byte)b;
+    }
+
+    private void writeRaw(int n) throws IOException {
+        for (int shift = 24; shift >= 0; shift -= 8)
+            writeByte(n >>> shift);
+    }
+
+    private void writeInt(int n) throws IOException {
+        while ((n & ~0x7f) != 0) {
+            writeByte((n & 0x7f) | 0x80);
+            n >>>= 7;
+        }
+        writeByte(n);
+    }
+}
@@ -0,0 +1,283 @@
+package src.parser;
+
+import java.io.Reader;
+import java.util.Arrays;
+
+import src.Result;
+import src.lexer.Lexer;
+import src.lexer.SymbolTable;
+
+import static src.parser.Node.*;
+
+/**
+ * A source that stays parsed across edits, for the REPL and editors.
+ * An edit re-lexes and re-parses from the top-level statement before it,
+ * until the parse lines up with an old statement boundary past the edit,
+ * the statements from there on are reused as they are. Reused statements
+ * keep the token positions of the parse that built them.
+ */
+public final class Document {
+    private final String source;
+    private final Text text;
+    private final SymbolTable symbols;
+    // top-level statements, with the offset and line of their first token.
+    private Stmt[] stmts;
+    private int[] starts, lines;
+    private int count;
+    // starts and lines from shiftFrom on are off by a move not applied yet.
+    private int shiftFrom, shiftStart, shiftLine;
+    // statements of the re-parsed range.
+    private Stmt[] fresh;
+    private int[] freshStarts, freshLines;
+    private Result<Program, Exception> result;
+
+    public Document(final CharSequence text, final String source) {
+        this.source = source;
+        this.text = new Text(text);
+        symbols = new SymbolTable();
+        stmts = new Stmt[16];
+        starts = new int[16];
+        lines = new int[16];
+        fresh = new Stmt[16];
+        freshStarts = new int[16];
+        freshLines = new int[16];
+        clear();
+        reparse(0, 0, 0, 0);
+    }
+
+    /**
+     * The program after the last edit, its body is built on demand so edits
+     * don't pay for copying it.
+     */
+    public Result<Program, Exception> getResult() {
+        if (result == null)
+            result = Result.ofValue(new Program(source, Arrays.copyOf(stmts, count)));
+        return result;
+    }
+
+    public SymbolTable getSymbols() { return symbols; }
+    public String getText() { return text.toString(); }
+
+    /**
+     * Replaces {@code removed} chars at {@code offset} with {@code inserted}
+     * and brings the program up to date, see {@link #getResult()}.
+     * The value is the number of statements parsed again.
+     */
+    public Result<Integer, Exception> edit(final int offset, final int removed, final CharSequence inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > text.length())
+            throw new IndexOutOfBoundsException(
+                "edit [" + offset + ", " + (offset + removed) + ") out of " + text.length() + ".");
+        int lineDelta = -text.newlines(offset, offset + removed);
+        for (int i = 0; i < inserted.length(); i++)
+            if (inserted.charAt(i) == '\n')
+                lineDelta++;
+        text.replace(offset, removed, inserted);
+        if (result != null && result.hasError())
+            clear();
+        // the last token of the statement before can merge with the edit.
+        int a = Math.max(0, find(offset) - 1);
+        return reparse(a, offset + inserted.length(), inserted.length() - removed, lineDelta);
+    }
+
+    private void clear() {
+        count = shiftFrom = 0;
+        shiftStart = shiftLine = 0;
+    }
+
+    private int start(int i) {
+        return i < shiftFrom ? starts[i] : starts[i] + shiftStart;
+    }
+
+    private int line(int i) {
+        return i < shiftFrom ? lines[i] : lines[i] + shiftLine;
+    }
+
+    // the last statement starting at or before `offset`, -1 if none.
+    private int find(int offset) {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (start(mid) <= offset)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return hi;
+    }
+
+    // re-parses from statement `a` until a statement starts past `editEnd`
+    // where one started `delta` chars earlier before the edit.
+    private Result<Integer, Exception> reparse(int a, int editEnd, int delta, int lineDelta) {
+        int from = a == 0 ? 0 : start(a);
+        int line = a == 0 ? 1 : line(a);
+        int m = 0, j = count;
+        boolean done = false;
+        try {
+            var parser = new Parser(new Lexer(text.reader(from), source, symbols, from, line, column(from)));
+            int at = from;
+            while (!parser.atEnd()) {
+                int start = parser.offset();
+                line += text.newlines(at, start);
+                at = start;
+                if (start >= editEnd) {
+                    int k = find(start - delta);
+                    if (k >= a && start(k) == start - delta) {
+                        j = k;
+                        break;
+                    }
+                }
+                Stmt stmt = parser.nextStmt();
+                if (m == fresh.length) {
+                    fresh = Arrays.copyOf(fresh, m * 2);
+                    freshStarts = Arrays.copyOf(freshStarts, m * 2);
+                    freshLines = Arrays.copyOf(freshLines, m * 2);
+                }
+                fresh[m] = stmt;
+                freshStarts[m] = start;
+                freshLines[m++] = line;
+            }
+            done = true;
+        } catch (Exception e) {
+            done = true;
+            clear();
+            if (a > 0 || j < count)
+                return reparse(0, 0, 0, 0);
+            result = Result.ofError(e);
+            return Result.ofError(e);
+        } finally {
+            // an Error leaves nothing to reuse.
+            if (!done)
+                clear();
+        }
+        splice(a, j, m, delta, lineDelta);
+        Arrays.fill(fresh, 0, m, null);
+        result = null;
+        return Result.ofValue(m);
+    }
+
+    // replaces statements [a, j) with the m fresh ones, the statements from
+    // j on move by `delta` chars and `lineDelta` lines. A move is only applied
+    // up to the next edit, from shiftFrom on it's left pending.
+    private void splice(int a, int j, int m, int delta, int lineDelta) {
+        if (shiftStart == 0 && shiftLine == 0)
+            shiftFrom = j;
+        for (int i = shiftFrom; i < a; i++) {
+            starts[i] += shiftStart;
+            lines[i] += shiftLine;
+        }
+        for (int i = j; i < shiftFrom; i++) {
+            starts[i] += delta;
+            lines[i] += lineDelta;
+        }
+        shiftFrom = Math.max(shiftFrom, j);
+        shiftStart += delta;
+        shiftLine += lineDelta;
+
+        int n = count - j + a + m;
+        if (n > stmts.length) {
+            int size = Math.max(n, stmts.length * 2);
+            stmts = Arrays.copyOf(stmts, size);
+            starts = Arrays.copyOf(starts, size);
+            lines = Arrays.copyOf(lines, size);
+        }
+        if (a + m != j) {
+            System.arraycopy(stmts, j, stmts, a + m, count - j);
+            System.arraycopy(starts, j, starts, a + m, count - j);
+            System.arraycopy(lines, j, lines, a + m, count - j);
+            if (n < count)
+                Arrays.fill(stmts, n, count, null);
+            shiftFrom += a + m - j;
+        }
+        System.arraycopy(fresh, 0, stmts, a, m);
+        System.arraycopy(freshStarts, 0, starts, a, m);
+        System.arraycopy(freshLines, 0, lines, a, m);
+        count = n;
+    }
+
+    // the lexer's column once it has read up to `offset`.
+    private int column(int offset) {
+        for (int i = offset - 1; i >= 0; i--)
+            if (text.charAt(i) == '\n')
+                return offset - i;
+        return offset;
+    }
+
+    /**
+     * The text as a gap buffer, edits only move the chars between the
+     * previous edit and this one.
+     */
+    private static final class Text {
+        private char[] buf;
+        private int gapStart, gapEnd;
+
+        Text(CharSequence text) {
+            buf = new char[text.length() + 1024];
+            for (int i = 0; i < text.length(); i++)
+                buf[i] = text.charAt(i);
+            gapStart = text.length();
+            gapEnd = buf.length;
+        }
+
+        int length() {
+            return buf.length - (gapEnd - gapStart);
+        }
+
+        char charAt(int i) {
+            return i < gapStart ? buf[i] : buf[i + gapEnd - gapStart];
+        }
+
+        int newlines(int from, int to) {
+            int n = 0;
+            for (int i = from; i < to; i++)
+                if (charAt(i) == '\n')
+                    n++;
+            return n;
+        }
+
+        void replace(int offset, int removed, CharSequence inserted) {
+            if (offset < gapStart)
+                System.arraycopy(buf, offset, buf, gapEnd - (gapStart - offset), gapStart - offset);
+            else
+                System.arraycopy(buf, gapEnd, buf, gapStart, offset - gapStart);
+            gapEnd -= gapStart - offset;
+            gapStart = offset;
+            gapEnd += removed;
+            int n = inserted.length();
+            if (gapEnd - gapStart < n) {
+                int size = Math.max(buf.length * 2, length() + n + 1024);
+                char[] grown = new char[size];
+                System.arraycopy(buf, 0, grown, 0, gapStart);
+                int tail = buf.length - gapEnd;
+                System.arraycopy(buf, gapEnd, grown, size - tail, tail);
+                buf = grown;
+                gapEnd = size - tail;
+            }
+            for (int i = 0; i < n; i++)
+                buf[gapStart++] = inserted.charAt(i);
+        }
+
+        Reader reader(int from) {
+            return new Reader() {
+                private int pos = from;
+
+                @Override
+                public int read(char[] cbuf, int off, int len) {
+                    int n = Math.min(len, length() - pos);
+                    if (n <= 0)
+                        return -1;
+                    for (int i = 0; i < n; i++)
+                        cbuf[off + i] = charAt(pos++);
+                    return n;
+                }
+
+                @Override
+                public void close() {}
+            };
+        }
+
+        @Override
+        public String toString() {
+            return new String(buf, 0, gapStart) + new String(buf, gapEnd, buf.length - gapEnd);
+        }
+    }
+}
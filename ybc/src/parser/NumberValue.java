@@ -0,0 +1,127 @@
+package src.parser;
+
+import static src.parser.Node.*;
+
+/**
+ * The value of a number literal as its suffix types it. {@code type} is one
+ * of z, s, i, l, f, d, or 0 for an integer without a width suffix, which is
+ * an {@code @1} and as wide as an {@code i}.
+ * Integers are their bits, sign or zero extended from the width to a long,
+ * floats are the bits of a double ({@code f} rounded to a float first).
+ */
+public record NumberValue(char type, boolean unsigned, long bits) {
+    public static NumberValue of(final NumberL n) throws NumberFormatException {
+        return parse(n.tok().getImage());
+    }
+
+    /**
+     * Parses the image of a number token. Based literals (0x, 0o, 0b) are
+     * bit patterns and may fill the whole width, a signed decimal may go
+     * one past the maximum, so that its negation is the minimum.
+     */
+    public static NumberValue parse(final String image) throws NumberFormatException {
+        String s = image.toLowerCase();
+        boolean based = s.length() > 1 && s.charAt(0) == '0' && "xob".indexOf(s.charAt(1)) >= 0;
+        int end = s.length();
+        if (!based && (s.indexOf('.') >= 0 || s.indexOf('e') >= 0 || s.endsWith("f") || s.endsWith("d"))) {
+            char type = 'd';
+            if (s.endsWith("f") || s.endsWith("d"))
+                type = s.charAt(--end);
+            double v = Double.parseDouble(s.substring(0, end));
+            if (type == 'f')
+                v = (float)v;
+            return new NumberValue(type, false, Double.doubleToRawLongBits(v));
+        }
+        char type = 0;
+        if (end > 0 && "zsil".indexOf(s.charAt(end - 1)) >= 0)
+            type = s.charAt(--end);
+        boolean unsigned = end > 0 && s.charAt(end - 1) == 'u';
+        if (unsigned)
+            end--;
+        int radix = !based ? 10 : switch (s.charAt(1)) {
+            case 'x' -> 16;
+            case 'o' -> 8;
+            default -> 2;
+        };
+        long v = Long.parseUnsignedLong(s.substring(based ? 2 : 0, end), radix);
+        int width = width(type);
+        long max = based || unsigned ? -1L >>> (64 - width) : 1L << (width - 1);
+        if (Long.compareUnsigned(v, max) > 0)
+            throw new NumberFormatException(image + " doesn't fit in " + width + " bits.");
+        if (width < 64)
+            v = unsigned ? v : v << (64 - width) >> (64 - width);
+        return new NumberValue(type, unsigned, v);
+    }
+
+    /** {@code v} cut to the width of {@code type}, then sign or zero extended. */
+    public static NumberValue ofInteger(final char type, final boolean unsigned, long v) {
+        int width = width(type);
+        if (width < 64)
+            v = unsigned ? v & -1L >>> (64 - width) : v << (64 - width) >> (64 - width);
+        return new NumberValue(type, unsigned, v);
+    }
+
+    /**
+     * {@code v} is a value of {@code type} as it is, without wrapping around.
+     * Arithmetic on untyped literals only folds to a result that fits.
+     */
+    public static boolean fits(final char type, final boolean unsigned, final long v) {
+        return ofInteger(type, unsigned, v).bits() == v;
+    }
+
+    public static NumberValue ofFloating(final char type, double v) {
+        if (type == 'f')
+            v = (float)v;
+        return new NumberValue(type, false, Double.doubleToRawLongBits(v));
+    }
+
+    public boolean isFloat() {
+        return type == 'f' || type == 'd';
+    }
+
+    // the sign bit is set, for floats too.
+    public boolean isNegative() {
+        return !unsigned && bits < 0;
+    }
+
+    public String suffix() {
+        if (isFloat())
+            return String.valueOf(type);
+        return (unsigned ? "u" : "") + (type == 0 ? "" : String.valueOf(type));
+    }
+
+    /**
+     * An image {@link #parse(String)} reads back as the magnitude of this
+     * value, a literal has no sign. For a float that isn't finite, there's none.
+     */
+    public String magnitude() {
+        if (isFloat())
+            return Double.toString(Math.abs(asDouble())) + type;
+        return Long.toUnsignedString(isNegative() ? -bits : bits) + suffix();
+    }
+
+    public int width() {
+        return width(type);
+    }
+
+    public long asLong() {
+        return isFloat() ? (long)asDouble() : bits;
+    }
+
+    public double asDouble() {
+        if (isFloat())
+            return Double.longBitsToDouble(bits);
+        if (unsigned && bits < 0)
+            return (double)(bits >>> 1) * 2.0 + (bits & 1);
+        return bits;
+    }
+
+    private static int width(char type) {
+        return switch (type) {
+            case 'z' -> 8;
+            case 's' -> 16;
+            case 0, 'i', 'f' -> 32;
+            default -> 64;
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package src.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import src.Result;
+import src.lexer.Lexer;
+import src.lexer.TokenBuffer;
+
+import static src.parser.Node.*;
+
+/**
+ * Parsed programs on disk, keyed by a hash of the source bytes and
+ * {@link #VERSION}. A hit is one read and a decode instead of a parse.
+ * Safe to share between threads and processes, entries are written to a
+ * temporary file and moved into place.
+ */
+public final class ParseCache {
+    // bump whenever the parser's output or the encoding changes.
+    public static final int VERSION = 2;
+    private static final int MAGIC = 0x59424143; // YBAC
+    private static final long C1 = 0x9e3779b97f4a7c15L, C2 = 0xbf58476d1ce4e5b9L;
+    private final Path dir;
+
+    public ParseCache(final Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+    }
+
+    /**
+     * The program in {@code file}, from the cache when it has it. The cache
+     * never makes a parse fail: an entry that can't be read or written is
+     * a miss, and the source is parsed as if there were no cache.
+     */
+    public Result<Program, Exception> parse(final Path file) {
+        ByteBuffer bytes;
+        try {
+            bytes = Lexer.map(file);
+        } catch (Exception e) {
+            return Result.ofError(e);
+        }
+        long hash = hash(bytes);
+        Path entry = dir.resolve("%016x.ast".formatted(hash));
+        Program cached = load(entry, hash, file.toString());
+        if (cached != null)
+            return Result.ofValue(cached);
+        Result<Program, Exception> res;
+        try {
+            res = SplitParser.parse(new TokenBuffer(new Lexer(bytes, file.toString())));
+        } catch (Exception e) {
+            return Result.ofError(e);
+        }
+        if (res.hasValue())
+            store(entry, hash, res.getValue());
+        return res;
+    }
+
+    // null on a miss, a stale or a broken entry. The reader turns anything
+    // broken into an IOException, it never allocates past what's mapped.
+    private static Program load(Path entry, long hash, String source) {
+        try {
+            ByteBuffer in = Lexer.map(entry);
+            if (in.remaining() < 16 || in.getInt() != MAGIC || in.getInt() != VERSION || in.getLong() != hash)
+                return null;
+            if (new AstReader(in).read() instanceof Program program)
+                return new Program(source, program.body());
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // best effort, an entry that can't be written is only a later miss.
+    private void store(Path entry, long hash, Program program) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(dir, "entry", ".tmp");
+            byte[] header = ByteBuffer.allocate(16).putInt(MAGIC).putInt(VERSION).putLong(hash).array();
+            try (var out = Files.newOutputStream(tmp)) {
+                out.write(header);
+                try (var ast = new AstWriter(out)) {
+                    ast.write(program);
+                }
+            }
+            Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // fall through, the parse stands.
+        } finally {
+            try {
+                if (tmp != null)
+                    Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                // left for the next clean of the directory.
+            }
+        }
+    }
+
+    /**
+     * A 64 bit hash of the bytes left in {@code bytes}, 8 bytes at a time.
+     * Not cryptographic, it only has to tell sources apart.
+     */
+    public static long hash(final ByteBuffer bytes) {
+        ByteBuffer b = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        long h = VERSION * C1 ^ b.remaining();
+        while (b.remaining() >= 8)
+            h = Long.rotateLeft(h ^ mix(b.getLong()), 27) * C1 + C2;
+        long tail = 0;
+        for (int shift = 0; b.hasRemaining(); shift += 8)
+            tail |= (b.get() & 0xffL) << shift;
+        return mix(h ^ mix(tail));
+    }
+
+    private static long mix(long k) {
+        k = (k ^ (k >>> 30)) * C2;
+        k = (k ^ (k >>> 27)) * 0x94d049bb133111ebL;
+        return k ^ (k >>> 31);
+    }
+}
@@ -1,13 +1,24 @@
 package src.parser;
 
 import java.io.Reader;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.HashMap;
-
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import src.Diagnostics;
+import src.Diagnostics.Code;
 import src.Result;
 import src.lexer.Lexer;
+import src.lexer.SymbolTable;
 import src.lexer.Token;
+import src.lexer.TokenBuffer;
 import src.lexer.TokenType;
 import src.lexer.UnreachableError;
 import src.lexer.exception.UnexpectedException;
@@ -15,56 +26,113 @@ import src.lexer.exception.UnexpectedException;
 import static src.parser.Node.*;
 
 public class Parser {
-    private static final Trie trie = new Trie();
-    private static final HashMap<String, Op> compoundMap = new HashMap<>();
-    private static String SYMBOLS = "";
-    private Lexer lexer;
-    private Token[] lookahead;
-    private Token ctok;
-
-    private static interface ExprParser {
-        public Expr parse(Parser parser) throws Exception;
-    }
-
-    private static enum OpMap {
-        // parseSimpleExpr
-        // parseMethodOrArrayExpr
-        // parsePostfixExpr
-        Root((p) -> p.parsePrefixExpr()),
-        Declare   (Root,       Map.of(":", Op.Declare)),
-        Assign    (Declare,    Map.of(":=", Op.DeclAssign, "=", Op.Assign,
-                                      "<=>", Op.Swap)),
-        CompAssign(Assign,     compoundMap),
-        Member    (CompAssign, Map.of(".", Op.Member)),
-        Compare   (Member,     Map.of("==", Op.Eq, "!=", Op.Ne, "<=", Op.Le,
-                                      ">=", Op.Ge, "<", Op.Lt, ">", Op.Gt)),
-        And       (Compare,    Map.of("&&", Op.And, "!&&", Op.Nand)),
-        Xor       (And,        Map.of("^^", Op.Xor, "!^^", Op.Xnor)),
-        Or        (Xor,        Map.of("||", Op.Or, "!||", Op.Nor)),
-        Exp       (Or,         Map.of("**", Op.Pow)),
-        Mult      (Exp,        Map.of("*", Op.Mul, "/", Op.Div)),
-        Additive  (Mult,       Map.of("+", Op.Add, "-", Op.Sub)),
-        Bitwise   (Additive,   Map.of("<<", Op.LeftShift, ">>", Op.RightShift,
-                                      "<<<", Op.LeftRoll, ">>>", Op.RightRoll)),
-        BwAnd     (Bitwise,    Map.of("&", Op.BwAnd, "~&", Op.BwNand)),
-        BwXor     (BwAnd,      Map.of("^", Op.BwXor, "~^", Op.BwXnor)),
-        BwOr      (BwXor,      Map.of("|", Op.BwOr, "~|", Op.BwNor));
-
-        final ExprParser fn;
+    private static final String[] OPERATORS = new String[] {
+        ":", ".", "=", "<=>", ":=",
+        "||=", "!||=", "&&=", "!&&=", "^^=", "!^^=",
+        "**=", "*=", "/=", "+=", "-=", "|=",
+        "~|=", "&=", "~&=", "^=", "~^=",
+        "<<=", ">>=", "<<<=", ">>>=",
+        "++", "--", "!", "~",
+        "==", "!=", "<=", ">=", "<", ">",
+        "||", "!||", "&&", "!&&", "^^", "!^^",
+        "**", "*", "/", "+", "-",
+        "|", "~|", "&", "~&", "^", "~^",
+        "<<", ">>", "<<<", ">>>",
+    };
+    // shared by every parser, it's never written after class init.
+    private static final Trie trie = operators();
+    private static final Op[] PREFIX = table(Map.of(
+        "+", Op.Pass, "-", Op.Negative, "!", Op.Not, "~", Op.BwNot,
+        "++", Op.PreInc, "--", Op.PreDec));
+    private static final Op[] POSTFIX = table(Map.of(
+        "++", Op.PostInc, "--", Op.PostDec, "!", Op.Error));
+    private static final TokenType[] TYPES = TokenType.values();
+    // thrown to unwind on an error, which is turned into an exception at the
+    // way out, see error(Exception).
+    private static final Exception ABORT = new Abort();
+    private static final int LOOKAHEAD = 5;
+    private static final int RING = 8, MASK = RING - 1;
+    private final String source;
+    private final SymbolTable symbolTable;
+    // tokens come from the lexer, or from tokens[next..end) when it's null.
+    private final Lexer lexer;
+    private final TokenBuffer tokens;
+    private Diagnostics diagnostics;
+    // the error being unwound by ABORT.
+    private Code failCode;
+    private Object failDetail;
+    private Token failTok;
+    private int next, end;
+    // lookahead ring over packed tokens, slot `head` is the current token.
+    // a type of -1 is the end of the stream.
+    private final int[] types = new int[RING], symbols = new int[RING],
+        offsets = new int[RING], lengths = new int[RING],
+        lines = new int[RING], columns = new int[RING];
+    private int head;
+    // absolute index of the current token, and the operator found there.
+    private int position, opPosition, opId, opLength;
+
+    // binary operators, from the loosest to the tightest binding level.
+    private static enum Precedence {
+        BwOr      (Map.of("|", Op.BwOr, "~|", Op.BwNor)),
+        BwXor     (Map.of("^", Op.BwXor, "~^", Op.BwXnor)),
+        BwAnd     (Map.of("&", Op.BwAnd, "~&", Op.BwNand)),
+        Bitwise   (Map.of("<<", Op.LeftShift, ">>", Op.RightShift,
+                          "<<<", Op.LeftRoll, ">>>", Op.RightRoll)),
+        Additive  (Map.of("+", Op.Add, "-", Op.Sub)),
+        Mult      (Map.of("*", Op.Mul, "/", Op.Div)),
+        Exp       (Map.of("**", Op.Pow)),
+        Or        (Map.of("||", Op.Or, "!||", Op.Nor)),
+        Xor       (Map.of("^^", Op.Xor, "!^^", Op.Xnor)),
+        And       (Map.of("&&", Op.And, "!&&", Op.Nand)),
+        Compare   (Map.of("==", Op.Eq, "!=", Op.Ne, "<=", Op.Le,
+                          ">=", Op.Ge, "<", Op.Lt, ">", Op.Gt)),
+        Member    (Map.of(".", Op.Member)),
+        CompAssign(Map.ofEntries(
+                   Map.entry("<=>", Op.Swap),
+                   Map.entry("||=", Op.OrAssign), Map.entry("!||=", Op.NorAssign),
+                   Map.entry("&&=", Op.AndAssign), Map.entry("!&&=", Op.NandAssign),
+                   Map.entry("^^=", Op.XorAssign), Map.entry("!^^=", Op.XnorAssign),
+                   Map.entry("**=", Op.PowAssign), Map.entry("*=", Op.MulAssign),
+                   Map.entry("/=", Op.DivAssign), Map.entry("+=", Op.AddAssign),
+                   Map.entry("-=", Op.SubAssign), Map.entry("|=", Op.BwOrAssign),
+                   Map.entry("~|=", Op.BwNorAssign), Map.entry("&=", Op.BwAndAssign),
+                   Map.entry("~&=", Op.BwNandAssign), Map.entry("^=", Op.BwXorAssign),
+                   Map.entry("~^=", Op.BwXnorAssign), Map.entry("<<=", Op.LeftShiftAssign),
+                   Map.entry(">>=", Op.RightShiftAssign), Map.entry("<<<=", Op.LeftRollAssign),
+                   Map.entry(">>>=", Op.RightRollAssign))),
+        Assign    (Map.of(":=", Op.DeclAssign, "=", Op.Assign, "<=>", Op.Swap)),
+        Declare   (Map.of(":", Op.Declare));
+
         final Map<String, Op> map;
+        final boolean right;
+
+        private Precedence(Map<String, Op> map) {
+            this(map, false);
+        }
 
-        private OpMap(OpMap next, Map<String, Op> map) {
-            fn = (p) -> Parser.parseBinOpExpr(
-                p,
-                next.fn,
-                map
-            );
+        private Precedence(Map<String, Op> map, boolean right) {
             this.map = map;
+            this.right = right;
         }
+    }
 
-        private OpMap(ExprParser next) {
-            fn = next;
-            this.map = Map.of();
+    // by operator index, an operator in two levels gets the tightest one.
+    private static final Op[] BINARY = new Op[OPERATORS.length];
+    // by Op ordinal.
+    private static final int[] PRECEDENCE = new int[Op.values().length];
+    private static final boolean[] RIGHT = new boolean[Op.values().length];
+
+    static {
+        for (var level : Precedence.values()) {
+            Op[] table = table(level.map);
+            for (int i = 0; i < table.length; i++) {
+                if (table[i] == null)
+                    continue;
+                BINARY[i] = table[i];
+                PRECEDENCE[table[i].ordinal()] = level.ordinal() + 1;
+                RIGHT[table[i].ordinal()] = level.right;
+            }
         }
     }
 
@@ -72,89 +140,280 @@ public class Parser {
         this(new Lexer(reader, source));
     }
 
+    public Parser(final CharSequence text, final String source) throws Exception {
+        this(new Lexer(text, source));
+    }
+
+    public Parser(final Path path) throws Exception {
+        this(new Lexer(path));
+    }
+
     public Parser(final Lexer lexer) throws Exception {
+        this(lexer, null, 0, 0);
+    }
+
+    public Parser(final TokenBuffer tokens) throws Exception {
+        this(tokens, 0, tokens.size());
+    }
+
+    /**
+     * Parses the tokens in [from, to), the end of the range is the end of the stream.
+     */
+    public Parser(final TokenBuffer tokens, final int from, final int to) throws Exception {
+        this(null, tokens, from, to);
+    }
+
+    private Parser(final Lexer lexer, final TokenBuffer tokens, final int from, final int to) throws Exception {
         this.lexer = lexer;
-        lookahead = new Token[5];
-        for (int i = 0; i < lookahead.length; i++) {
-            lookahead[i] = parseToken();
-            if (lookahead[i] == null)
-                continue;
-            lookahead[i] = lookahead[i].cloneToken();
-        }
-        ctok = lookahead[0];
+        this.tokens = tokens;
+        this.source = lexer != null ? lexer.SOURCE : tokens.SOURCE;
+        this.symbolTable = lexer != null ? lexer.getSymbols() : tokens.getSymbols();
+        next = from;
+        end = to;
+        head = position = 0;
+        opPosition = -1;
+        for (int i = 0; i < LOOKAHEAD; i++)
+            fill(i);
+    }
+
+    public SymbolTable getSymbols() {
+        return symbolTable;
+    }
+
+    /** Errors are also reported to {@code diagnostics}, the lexer's too. */
+    public void setDiagnostics(final Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+        if (lexer != null)
+            lexer.setDiagnostics(diagnostics);
+    }
+
+    private Exception fail(Code code, Object detail, Token tok) {
+        if (diagnostics != null)
+            diagnostics.report(code, detail, source, tok);
+        failCode = code;
+        failDetail = detail;
+        failTok = tok;
+        return ABORT;
+    }
+
+    private Exception error(Exception e) {
+        if (e != ABORT)
+            return e;
+        return new UnexpectedException(failCode, failDetail, source, failTok);
     }
 
     private Token parseToken() throws Exception {
         Token tok = null;
         while (lexer.hasNext()) {
-            var res = lexer.next();
-            if (res.hasError())
-                throw res.getError();
-            if (res.hasValue())
-                tok = res.getValue();
+            tok = lexer.nextToken();
             if (tok == null || tok.getType() != TokenType.Comment)
                 break;
         }
         return tok;
     }
 
+    private void fill(int slot) throws Exception {
+        if (lexer != null) {
+            store(slot, parseToken());
+            return;
+        }
+        if (next == tokens.size() && tokens.getError() != null)
+            throw tokens.getError();
+        if (next >= end) {
+            types[slot] = -1;
+            return;
+        }
+        types[slot] = tokens.type(next).ordinal();
+        symbols[slot] = tokens.symbol(next);
+        offsets[slot] = tokens.offset(next);
+        lengths[slot] = tokens.length(next);
+        lines[slot] = tokens.line(next);
+        columns[slot] = tokens.column(next);
+        next++;
+    }
+
+    private void store(int slot, Token tok) {
+        if (tok == null) {
+            types[slot] = -1;
+            return;
+        }
+        types[slot] = tok.getType().ordinal();
+        symbols[slot] = tok.getSymbol();
+        offsets[slot] = tok.getOffset();
+        lengths[slot] = tok.getLength();
+        lines[slot] = tok.getLine();
+        columns[slot] = tok.getColumn();
+    }
+
+    private TokenType type() {
+        return type(0);
+    }
+
+    // the type of the i-th token ahead, null past the end.
+    private TokenType type(int i) {
+        int type = types[(head + i) & MASK];
+        return type < 0 ? null : TYPES[type];
+    }
+
+    private String image(int i) {
+        int slot = (head + i) & MASK;
+        if (symbols[slot] >= 0)
+            return symbolTable.name(symbols[slot]);
+        return TYPES[types[slot]].image;
+    }
+
+    // the i-th token ahead as an object, only built for nodes and errors.
+    private Token token(int i) {
+        int slot = (head + i) & MASK;
+        if (types[slot] < 0)
+            return null;
+        return new Token(TYPES[types[slot]], image(i), symbols[slot],
+            offsets[slot], lengths[slot], lines[slot], columns[slot]);
+    }
+
+    private Token token() {
+        return token(0);
+    }
+
     private Token advanceTok() throws Exception {
-        Token tok = ctok;
+        Token tok = token();
         advance();
         return tok;
     }
 
     private void advance() throws Exception {
         advanceEOS();
-        if (ctok == null)
-            throw new UnexpectedException("unexpected EOS.", lexer.SOURCE, null);
+        if (type() == null)
+            throw fail(Code.UNEXPECTED_EOS, null, null);
     }
 
     private void advanceEOS() throws Exception {
-        System.arraycopy(lookahead, 1, lookahead, 0, lookahead.length - 1);
-        ctok = lookahead[0];
-        Token tok = parseToken();
-        lookahead[lookahead.length - 1] = tok == null ? null : tok.cloneToken();
+        position++;
+        head = (head + 1) & MASK;
+        fill((head + LOOKAHEAD - 1) & MASK);
     }
 
     private void expect(TokenType type) throws Exception {
-        if (ctok == null)
-            throw new UnexpectedException("unexpected EOS (expected " + type + ").", lexer.SOURCE, null);
-        if (ctok.getType() == type)
+        if (type() == null)
+            throw fail(Code.EXPECTED_EOS, type, null);
+        if (type() == type)
             return;
         // eg.: unexpected token (expected LIdentifier).
-        throw new UnexpectedException("unexpected token (expected " + type + ").", lexer.SOURCE, ctok);
+        throw fail(Code.EXPECTED, type, token());
     }
 
     private void expect(TokenType... type) throws Exception {
-        if (ctok == null)
-            throw new UnexpectedException("unexpected EOS (expected " + type + ").", lexer.SOURCE, null);
+        if (type() == null)
+            throw fail(Code.EXPECTED_EOS, type, null);
         for (int i = 0; i < type.length; i++)
-            if (ctok.getType() == type[i])
+            if (type() == type[i])
                 return;
-        String types = "";
-        for (int i = 0; i < type.length; i++)
-            types += type[i] + ", ";
-        if (type.length > 0)
-            types = types.substring(0, types.length() - 2);
         // eg.: unexpected token (expected LIdentifier, SColon).
-        throw new UnexpectedException("unexpected token (expected " + types + ").", lexer.SOURCE, ctok);
+        throw fail(Code.EXPECTED, type, token());
     }
 
     public Result<Program, Exception> parseProgram() {
+        var body = new ArrayList<Stmt>();
+        var res = parseProgram(body::add);
+        if (res.hasError())
+            return Result.ofError(res.getError());
+        return Result.ofValue(new Program(source, body.toArray(new Stmt[0])));
+    }
+
+    /**
+     * Hands every top-level statement to {@code sink} as soon as it's parsed,
+     * nothing is kept once it returns. The value is the number of statements.
+     */
+    public Result<Integer, Exception> parseProgram(final Consumer<? super Stmt> sink) {
+        int count = 0;
         try {
-            var body = new ArrayList<Stmt>();
-            while (ctok != null) {
-                body.add(parseStmt());
+            while (type() != null) {
+                sink.accept(parseStmt());
+                count++;
             }
-            return Result.ofValue(new Program(lexer.SOURCE, body.toArray(new Stmt[0])));
+            return Result.ofValue(count);
         } catch (Exception e) {
-            return Result.ofError(e);
+            return Result.ofError(error(e));
+        }
+    }
+
+    /**
+     * The top-level statements, parsed one per {@code next()}. A parse error
+     * is thrown from {@code next()} as a {@link ParseError}, the iterator
+     * ends after it.
+     */
+    public Iterator<Stmt> statements() {
+        return new Iterator<>() {
+            private boolean failed;
+
+            @Override
+            public boolean hasNext() {
+                return !failed && type() != null;
+            }
+
+            @Override
+            public Stmt next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    return parseStmt();
+                } catch (Exception e) {
+                    failed = true;
+                    throw new ParseError(error(e));
+                }
+            }
+        };
+    }
+
+    /** {@link #statements()} as a sequential stream. */
+    public Stream<Stmt> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(statements(),
+            Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    // stackless, and only ever the one instance in ABORT.
+    private static final class Abort extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private Abort() {
+            super("parse aborted.", null, false, false);
+        }
+    }
+
+    /** A parse error out of {@link #statements()}, the cause is the original exception. */
+    public static final class ParseError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private ParseError(Exception cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    // the program's name, for AstArena.
+    String source() {
+        return source;
+    }
+
+    // a statement at a time, for Document.
+    boolean atEnd() {
+        return type() == null;
+    }
+
+    // offset of the current token.
+    int offset() {
+        return offsets[head];
+    }
+
+    Stmt nextStmt() throws Exception {
+        try {
+            return parseStmt();
+        } catch (Exception e) {
+            throw error(e);
         }
     }
 
     private Stmt parseStmt() throws Exception {
-        return switch (ctok.getType()) {
+        return switch (type()) {
             case SOpenCurlyBracket -> parseBlock();
             case KSwitch -> parseSwitch();
             case KIf -> parseIf();
@@ -184,7 +443,7 @@ public class Parser {
     private BlockStmt parseBlock() throws Exception {
         advance();
         ArrayList<Stmt> body = new ArrayList<>();
-        while (ctok.getType() != TokenType.SClosedCurlyBracket) {
+        while (type() != TokenType.SClosedCurlyBracket) {
             body.add(parseStmt());
         }
         advanceEOS();
@@ -267,41 +526,34 @@ public class Parser {
     }
 
     private Expr parseExpr() throws Exception {
-        return Parser.parseBinOpExpr(
-            this,
-            OpMap.BwOr.fn,
-            OpMap.BwOr.map
-        );
+        return parseBinOpExpr(1);
     }
 
-    private static Expr parseBinOpExpr(Parser p, ExprParser next, Map<String, Op> operators) throws Exception {
-        Expr left = next.parse(p);
+    // precedence climbing: the right side of an operator only takes the
+    // operators that bind tighter (or as tight, if it's right associative).
+    private Expr parseBinOpExpr(int minPrecedence) throws Exception {
+        Expr left = parsePrefixExpr();
         while (true) {
-            Op op = operators.get(p.getOperatorNoAdvance());
-            if (op == null)
+            Op op = operator(BINARY);
+            if (op == null || PRECEDENCE[op.ordinal()] < minPrecedence)
                 return left;
-            p.getOperator();
-            left = new BinOpExpr(op, left, next.parse(p));
+            skipOperator();
+            int precedence = PRECEDENCE[op.ordinal()];
+            Expr right = parseBinOpExpr(RIGHT[op.ordinal()] ? precedence : precedence + 1);
+            left = new BinOpExpr(op, left, right);
         }
     }
 
     private Expr parsePrefixExpr() throws Exception {
         ArrayList<Op> ops = new ArrayList<>();
         while (true) {
-            Op op = switch (getOperatorNoAdvance()) {
-                case "" -> null;
-                case "+" -> Op.Pass;
-                case "-" -> Op.Negative;
-                case "!" -> Op.Not;
-                case "~" -> Op.BwNot;
-                case "++" -> Op.PreInc;
-                case "--" -> Op.PreDec;
-                default -> throw new UnexpectedException("unexpected operator.", lexer.SOURCE, ctok);
-            };
-            if (op == null)
+            if (scanOperator() < 0)
                 break;
+            Op op = operator(PREFIX);
+            if (op == null)
+                throw fail(Code.UNEXPECTED_OPERATOR, null, token());
             ops.add(op);
-            getOperator();
+            skipOperator();
         }
         Expr expr = parsePostfixExpr();
         for (int i = 0; i < ops.size(); i++)
@@ -312,15 +564,10 @@ public class Parser {
     private Expr parsePostfixExpr() throws Exception {
         Expr expr = parseMethodOrArrayExpr();
         while (true) {
-            Op op = switch (getOperatorNoAdvance()) {
-                case "++" -> Op.PostInc;
-                case "--" -> Op.PostDec;
-                case "!" -> Op.Error;
-                default -> null;
-            };
+            Op op = operator(POSTFIX);
             if (op == null)
                 break;
-            getOperator();
+            skipOperator();
             expr = new UnaryOpExpr(op, expr);
         }
         return expr;
@@ -329,12 +576,12 @@ public class Parser {
     private Expr parseMethodOrArrayExpr() throws Exception {
         Expr left = parseSimpleExpr();
         while (true) {
-            if (ctok.getType() == TokenType.SOpenBracket) {
+            if (type() == TokenType.SOpenBracket) {
                 advance();
                 ArrayList<Expr> list = new ArrayList<>();
-                while (ctok.getType() != TokenType.SClosedBracket) {
+                while (type() != TokenType.SClosedBracket) {
                     list.add(parseExpr());
-                    if (ctok.getType() == TokenType.SComma) {
+                    if (type() == TokenType.SComma) {
                         advance();
                     } else {
                         break;
@@ -343,7 +590,7 @@ public class Parser {
                 expect(TokenType.SClosedBracket);
                 advance();
                 left = new MethodCallExpr(left, list.toArray(new Expr[0]));
-            } else if (ctok.getType() == TokenType.SOpenSquareBracket) {
+            } else if (type() == TokenType.SOpenSquareBracket) {
                 advance();
                 left = new BinOpExpr(Op.ArrIndex, left, parseExpr());
                 expect(TokenType.SClosedSquareBracket);
@@ -356,10 +603,16 @@ public class Parser {
     }
 
     private Expr parseSimpleExpr() throws Exception {
-        return switch (ctok.getType()) {
-            case Identifier, KCast, KClass, SQuestion -> new IdentifierL(advanceTok());
-            case LString -> new StringL(ctok, parseStringLiteral(advanceTok()));
-            case LCharacter -> new CharL(ctok, parseCharacterLiteral(advanceTok()));
+        return switch (type()) {
+            case Identifier, KCast, KClass, SQuestion -> parseIdentifier();
+            case LString -> {
+                Token tok = advanceTok();
+                yield new StringL(tok, parseStringLiteral(tok));
+            }
+            case LCharacter -> {
+                Token tok = advanceTok();
+                yield new CharL(tok, parseCharacterLiteral(tok));
+            }
             case LNumber -> new NumberL(advanceTok());
             case SOpenBracket -> {
                 advance();
@@ -384,23 +637,34 @@ public class Parser {
             case KBreakif -> parseBreakifExpr();
             case KContinueif -> parseContinueifExpr();
             case KReturnif -> parseReturnifExpr();
-            case KThis -> new IdentifierL(advanceTok());
-            case KCThis -> new IdentifierL(advanceTok());
+            case KThis -> parseIdentifier();
+            case KCThis -> parseIdentifier();
             case KFn -> parseFnExprOrType();
             case KFinal, KVoid, KAuto, KByte, KShort, KInt, KLong, KUbyte, KUshort,
                  KUint, KUlong, KFloat, KDouble -> parseTypeExpr();
             case KNull -> new NullL(advanceTok());
-            case KTrue -> new BoolL(ctok, advanceTok().getType() == TokenType.KTrue);
-            case KFalse -> new BoolL(ctok, advanceTok().getType() == TokenType.KTrue);
+            case KTrue, KFalse -> {
+                Token tok = advanceTok();
+                yield new BoolL(tok, tok.getType() == TokenType.KTrue);
+            }
             case Comment -> throw new UnreachableError();
-            default -> throw new UnexpectedException("unexpected token.", lexer.SOURCE, ctok);
+            default -> throw fail(Code.UNEXPECTED_TOKEN, null, token());
         };
     }
 
+    private IdentifierL parseIdentifier() throws Exception {
+        Token tok = advanceTok();
+        // keywords used as identifiers aren't interned by the lexer.
+        int symbol = tok.getSymbol() < 0
+            ? symbolTable.intern(tok.getImage())
+            : tok.getSymbol();
+        return new IdentifierL(tok, symbol);
+    }
+
     private Expr parseArrayL() throws Exception {
         ArrayList<Expr> list = new ArrayList<>();
         advance(); // [ //
-        while (ctok.getType() != TokenType.SClosedSquareBracket)
+        while (type() != TokenType.SClosedSquareBracket)
             list.add(parseExpr());
         advance(); // ] //
         return new ArrayL(list.toArray(new Expr[0]));
@@ -452,7 +716,7 @@ public class Parser {
 
     private Expr parseFnExprOrType() throws Exception {
         advance();
-        if (ctok.getType() == TokenType.SColon) {
+        if (type() == TokenType.SColon) {
             Arg[] args = parseArgList();
             TypeExpr type = parseTypeExpr();
             return new FnExpr(args, type, parseStmt());
@@ -477,7 +741,7 @@ public class Parser {
     private Arg[] parseArgList() throws Exception {
         ArrayList<Arg> list = new ArrayList<>();
         advance(); // ( //
-        IdentifierL name = new IdentifierL(advanceTok());
+        IdentifierL name = parseIdentifier();
         expect(TokenType.SColon);
         advance(); // : //
         list.add(new Arg(name, parseTypeExpr()));
@@ -486,72 +750,54 @@ public class Parser {
         return list.toArray(new Arg[0]);
     }
 
-    private String getOperator() throws Exception {
-        String s = getOperatorNoAdvance();
-        for (int i = 0; i < s.length(); i++)
-            advance();
-        return s;
-    }
-
-    private String getOperatorNoAdvance() throws Exception {
-        String s = "";
-        int i = 0; 
-        for (; i < lookahead.length - 1; i++) {
-            if (lookahead[i] == null || SYMBOLS.indexOf(lookahead[i].getImage()) < 0)
+    private static Op[] table(Map<String, Op> map) {
+        Op[] table = new Op[OPERATORS.length];
+        for (int i = 0; i < OPERATORS.length; i++)
+            table[i] = map.get(OPERATORS[i]);
+        return table;
+    }
+
+    // the longest operator starting at the current token, as an index into
+    // OPERATORS or -1. scanned once per position, however many precedence
+    // levels ask for it.
+    private int scanOperator() {
+        if (opPosition == position)
+            return opId;
+        opPosition = position;
+        opId = -1;
+        opLength = 0;
+        int state = Trie.ROOT;
+        for (int i = 0; i < LOOKAHEAD - 1; i++) {
+            TokenType type = type(i);
+            // operators are made of single char symbowls.
+            if (type == null || type.image == null || type.image.length() != 1)
                 break;
-            s += lookahead[i].getImage();
-            if (!trie.partialMatch(s))
+            state = trie.next(state, type.image.charAt(0));
+            if (state < 0)
                 break;
+            if (trie.value(state) >= 0) {
+                opId = trie.value(state);
+                opLength = i + 1;
+            }
         }
-        if (s.isEmpty())
-            return s;
-        while (!trie.match(s) && s.length() > 0)
-            s = s.substring(0, s.length() - 1);
-        return s;
-    }
-
-    {
-        String[] operators = new String[] { 
-            ":", ".", "=", "<=>", ":=",
-            "||=", "!||=", "&&=", "!&&=", "^^=", "!^^=",
-            "**=", "*=", "/=", "+=", "-=", "|=",
-            "~|=", "&=", "~&=", "^=", "~^=",
-            "<<=", ">>=", "<<<=", ">>>=",
-            "++", "--", "!", "~",
-            "==", "!=", "<=", ">=", "<", ">",
-            "||", "!||", "&&", "!&&", "^^", "!^^",
-            "**", "*", "/", "+", "-",
-            "|", "~|", "&", "~&", "^", "~^",
-            "<<", ">>", "<<<", ">>>",
-        };
-        for (var op : operators) {
-            trie.add(op);
-            for (int i = 0; i < op.length(); i++)
-                if (SYMBOLS.indexOf(op.charAt(i)) < 0)
-                    SYMBOLS += op.charAt(i);
-        }
+        return opId;
+    }
+
+    private Op operator(Op[] table) {
+        int id = scanOperator();
+        return id < 0 ? null : table[id];
+    }
+
+    private void skipOperator() throws Exception {
+        int length = opLength;
+        for (int i = 0; i < length; i++)
+            advance();
+    }
 
-        compoundMap.put("<=>", Op.Swap);
-        compoundMap.put("||=", Op.OrAssign);
-        compoundMap.put("!||=", Op.NorAssign);
-        compoundMap.put("&&=", Op.AndAssign);
-        compoundMap.put("!&&=", Op.NandAssign);
-        compoundMap.put("^^=", Op.XorAssign);
-        compoundMap.put("!^^=", Op.XnorAssign);
-        compoundMap.put("**=", Op.PowAssign);
-        compoundMap.put("*=", Op.MulAssign);
-        compoundMap.put("/=", Op.DivAssign);
-        compoundMap.put("+=", Op.AddAssign);
-        compoundMap.put("-=", Op.SubAssign);
-        compoundMap.put("|=", Op.BwOrAssign);
-        compoundMap.put("~|=", Op.BwNorAssign);
-        compoundMap.put("&=", Op.BwAndAssign);
-        compoundMap.put("~&=", Op.BwNandAssign);
-        compoundMap.put("^=", Op.BwXorAssign);
-        compoundMap.put("~^=", Op.BwXnorAssign);
-        compoundMap.put("<<=", Op.LeftShiftAssign);
-        compoundMap.put(">>=", Op.RightShiftAssign);
-        compoundMap.put("<<<=", Op.LeftRollAssign);
-        compoundMap.put(">>>=", Op.RightRollAssign);
+    private static Trie operators() {
+        Trie trie = new Trie();
+        for (int i = 0; i < OPERATORS.length; i++)
+            trie.put(OPERATORS[i], i);
+        return trie.freeze();
     }
 }
@@ -0,0 +1,151 @@
+package src.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import src.Result;
+import src.lexer.SymbolTable;
+import src.lexer.TokenBuffer;
+import src.lexer.TokenType;
+
+import static src.parser.Node.*;
+
+/**
+ * Parses one big source in parallel. The token stream is cut in front of
+ * top-level class, primitive, enum, intef and impl declarations and
+ * plain { ... } blocks, the regions are parsed concurrently and their
+ * statements stitched back in order.
+ */
+public final class SplitParser {
+    // regions are merged until they hold at least this many tokens.
+    private static final int MIN_REGION = 1 << 14;
+
+    private SplitParser() {}
+
+    public static Result<Program, Exception> parse(final TokenBuffer tokens) {
+        return parse(tokens, ForkJoinPool.commonPool());
+    }
+
+    public static Result<Program, Exception> parse(final TokenBuffer tokens, final ForkJoinPool pool) {
+        int[] bounds = split(tokens, MIN_REGION);
+        if (bounds.length <= 2)
+            return sequential(tokens);
+        internKeywords(tokens);
+
+        List<Region> regions = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++)
+            regions.add(new Region(tokens, bounds[i], bounds[i + 1]));
+        if (ForkJoinTask.inForkJoinPool())
+            ForkJoinTask.invokeAll(regions);
+        else
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(regions)));
+
+        var body = new ArrayList<Stmt>();
+        for (var region : regions) {
+            // a region can't tell a real error from a bad cut, and the error
+            // should be the one of a sequential parse anyway.
+            if (region.result.hasError())
+                return sequential(tokens);
+            for (var stmt : region.result.getValue().body())
+                body.add(stmt);
+        }
+        return Result.ofValue(new Program(tokens.SOURCE, body.toArray(new Stmt[0])));
+    }
+
+    /**
+     * Region boundaries as token indices, starting at 0 and ending at the
+     * size of the buffer, regions are at least {@code min} tokens long.
+     * A cut is made where a statement starts at depth 0 with a block.
+     */
+    public static int[] split(final TokenBuffer tokens, final int min) {
+        int[] bounds = new int[16];
+        int n = 1, depth = 0;
+        bounds[0] = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenType type = tokens.type(i);
+            if (depth == 0 && i - bounds[n - 1] >= min && startsStmt(tokens, i) && opensBlock(tokens, i)) {
+                if (n + 1 == bounds.length)
+                    bounds = Arrays.copyOf(bounds, n * 2);
+                bounds[n++] = i;
+            }
+            switch (type) {
+                case SOpenBracket, SOpenSquareBracket, SOpenCurlyBracket -> depth++;
+                case SClosedBracket, SClosedSquareBracket, SClosedCurlyBracket -> depth--;
+                default -> {}
+            }
+        }
+        bounds[n++] = tokens.size();
+        return Arrays.copyOf(bounds, n);
+    }
+
+    private static boolean startsStmt(TokenBuffer tokens, int i) {
+        if (i == 0)
+            return true;
+        TokenType prev = tokens.type(i - 1);
+        return prev == TokenType.SSemicolon || prev == TokenType.SClosedCurlyBracket;
+    }
+
+    private static boolean opensBlock(TokenBuffer tokens, int i) {
+        while (i < tokens.size()) {
+            switch (tokens.type(i)) {
+                case KNative, KProt, KPriv, KFinal -> i++;
+                case KClass, KPrimitive, KEnum, KInterface, KImplement, SOpenCurlyBracket -> {
+                    return true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    // the parser interns any token it reads as an identifier that the lexer
+    // didn't, keywords and ? but also whatever an argument list starts with.
+    // Intern every fixed image up front so the regions only ever read the
+    // shared symbol table.
+    private static void internKeywords(TokenBuffer tokens) {
+        SymbolTable symbols = tokens.getSymbols();
+        boolean[] interned = new boolean[TokenType.values().length];
+        for (int i = 0; i < tokens.size(); i++) {
+            TokenType type = tokens.type(i);
+            if (tokens.symbol(i) < 0 && type.image != null && !interned[type.ordinal()]) {
+                symbols.intern(type.image);
+                interned[type.ordinal()] = true;
+            }
+        }
+    }
+
+    private static Result<Program, Exception> sequential(TokenBuffer tokens) {
+        try {
+            return new Parser(tokens).parseProgram();
+        } catch (Exception e) {
+            return Result.ofError(e);
+        }
+    }
+
+    private static final class Region extends RecursiveAction {
+        private final TokenBuffer tokens;
+        private final int from, to;
+        private Result<Program, Exception> result;
+
+        Region(TokenBuffer tokens, int from, int to) {
+            this.tokens = tokens;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                result = new Parser(tokens, from, to).parseProgram();
+            } catch (Exception e) {
+                result = Result.ofError(e);
+            }
+        }
+    }
+}
@@ -1,64 +1,174 @@
 package src.parser;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
+/**
+ * A trie flattened into a transition table. States are ints, ROOT is 0,
+ * and a row of the table holds the next state per char of the alphabet
+ * (0 is no transition, the root is never a target). Only ASCII patterns.
+ */
 public class Trie {
-    private int prefix;
-    private boolean matches;
-    private ArrayList<Trie> next;
+    public static final int ROOT = 0;
+    // column of an ASCII char in the table, -1 if it's not in any pattern.
+    private final int[] columns;
+    private char[] alphabet;
+    private int width;
+    private int[] delta;
+    private char[] prefix;
+    private boolean[] matches;
+    private int[] values;
+    private int states;
+    private boolean frozen;
 
     public Trie() {
-        prefix = -1;
-        next = new ArrayList<>();
+        columns = new int[128];
+        Arrays.fill(columns, -1);
+        alphabet = new char[0];
+        width = 0;
+        delta = new int[0];
+        prefix = new char[16];
+        matches = new boolean[16];
+        values = new int[16];
+        states = 0;
+        frozen = false;
+        newState((char)-1);
+    }
+
+    /**
+     * Makes the trie read-only, it's safe to share between threads once
+     * safely published (eg. through a static final field).
+     */
+    public Trie freeze() {
+        frozen = true;
+        return this;
     }
 
     public void add(String pattern) { add(pattern, 0); }
     public void add(String pattern, int beginIndex) {
-        if (pattern.length() == beginIndex) {
-            this.matches = true;
-            return;
-        }
-        char prefix = pattern.charAt(beginIndex);
-        for (var trie : next)
-            if (prefix == trie.prefix) {
-                trie.add(pattern, beginIndex + 1);
-                return;
+        insert(pattern, beginIndex);
+    }
+
+    /**
+     * Adds a pattern that carries a value, see {@link #value(int)}.
+     */
+    public void put(String pattern, int value) {
+        int state = insert(pattern, 0);
+        values[state] = value;
+    }
+
+    private int insert(String pattern, int beginIndex) {
+        if (frozen)
+            throw new IllegalStateException("the trie is frozen.");
+        int state = ROOT;
+        for (int i = beginIndex; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            int column = column(c);
+            int next = delta[state * width + column];
+            if (next == 0) {
+                next = newState(c);
+                delta[state * width + column] = next;
             }
-        var trie = new Trie();
-        trie.prefix = prefix;
-        trie.matches = pattern.length() == beginIndex;
-        next.add(trie);
-        trie.add(pattern, beginIndex + 1);
+            state = next;
+        }
+        matches[state] = true;
+        return state;
+    }
+
+    private int newState(char c) {
+        if (states == matches.length) {
+            prefix = Arrays.copyOf(prefix, states * 2);
+            matches = Arrays.copyOf(matches, states * 2);
+            values = Arrays.copyOf(values, states * 2);
+            delta = Arrays.copyOf(delta, states * 2 * width);
+        }
+        prefix[states] = c;
+        values[states] = -1;
+        return states++;
     }
 
+    private int column(char c) {
+        if (c >= 128)
+            throw new IllegalArgumentException("only ASCII patterns are supported, got \"" + c + "\".");
+        if (columns[c] >= 0)
+            return columns[c];
+        // widen every row by one column.
+        int[] wider = new int[matches.length * (width + 1)];
+        for (int s = 0; s < states; s++)
+            System.arraycopy(delta, s * width, wider, s * (width + 1), width);
+        delta = wider;
+        alphabet = Arrays.copyOf(alphabet, width + 1);
+        alphabet[width] = c;
+        columns[c] = width;
+        return width++;
+    }
+
+    // the state reached from state by c, -1 if there's none.
+    public int next(int state, char c) {
+        if (c >= 128 || columns[c] < 0)
+            return -1;
+        int next = delta[state * width + columns[c]];
+        return next == 0 ? -1 : next;
+    }
+
+    // the value of a pattern ending at state, -1 if there's none.
+    public int value(int state) {
+        return matches[state] ? values[state] : -1;
+    }
+
+    // the state reached by pattern from beginIndex, -1 if it falls off.
+    private int walk(String pattern, int beginIndex) {
+        int state = ROOT;
+        for (int i = beginIndex; i < pattern.length() && state >= 0; i++)
+            state = next(state, pattern.charAt(i));
+        return state;
+    }
 
     public boolean partialMatch(String pattern) { return partialMatch(pattern, 0); }
     public boolean partialMatch(String pattern, int beginIndex) {
-        if (pattern.length() == beginIndex)
-            return true;
-        char prefix = pattern.charAt(beginIndex);
-        for (var trie : next)
-            if (trie.prefix == prefix)
-                return trie.partialMatch(pattern, beginIndex + 1);
-        return pattern.length() == beginIndex;
+        return walk(pattern, beginIndex) >= 0;
     }
 
     public boolean match(String pattern) { return match(pattern, 0); }
     public boolean match(String pattern, int beginIndex) {
-        if (pattern.length() == beginIndex)
-            return matches;
-        char prefix = pattern.charAt(beginIndex);
-        for (var trie : next)
-            if (trie.prefix == prefix)
-                return trie.match(pattern, beginIndex + 1);
-        return false;
+        int state = walk(pattern, beginIndex);
+        return state >= 0 && matches[state];
+    }
+
+    // the length of the longest prefix of pattern that matches, 0 if none does.
+    public int longestMatch(String pattern) { return longestMatch(pattern, 0); }
+    public int longestMatch(String pattern, int beginIndex) {
+        int longest = 0;
+        int state = ROOT;
+        for (int i = beginIndex; i < pattern.length(); i++) {
+            state = next(state, pattern.charAt(i));
+            if (state < 0)
+                break;
+            if (matches[state])
+                longest = i + 1 - beginIndex;
+        }
+        return longest;
     }
 
     @Override
     public String toString() {
-        String s = "Trie(" + (char)prefix + ", " + matches + ")\n";
-        for (var trie : next)
-            s += trie.toString().indent(2);
-        return s;
+        var s = new StringBuilder();
+        // depth first, children in alphabet order, two spaces a level.
+        int[] stack = new int[states], depths = new int[states];
+        int top = 0;
+        stack[top++] = ROOT;
+        while (top > 0) {
+            int state = stack[--top], depth = depths[top];
+            for (int i = 0; i < depth; i++)
+                s.append("  ");
+            s.append("Trie(").append(prefix[state]).append(", ").append(matches[state]).append(")\n");
+            for (int column = width - 1; column >= 0; column--) {
+                int next = delta[state * width + column];
+                if (next != 0) {
+                    stack[top] = next;
+                    depths[top++] = depth + 1;
+                }
+            }
+        }
+        return s.toString();
     }
 }
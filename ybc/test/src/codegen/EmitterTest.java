@@ -0,0 +1,65 @@
+package src.codegen;
+
+import org.junit.jupiter.api.Test;
+
+import src.lexer.Token;
+import src.lexer.TokenType;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static src.parser.Node.*;
+
+/**
+ * Deep trees come out of {@link Emitter} as code or as an error, never as
+ * a stack overflow.
+ */
+class EmitterTest {
+    @Test
+    void chainsEmitOnEitherSide() {
+        Expr left = id(0), right = id(0);
+        for (int i = 0; i < 200_000; i++) {
+            left = new BinOpExpr(Op.Add, left, id(1));
+            right = new BinOpExpr(Op.Sub, id(1), new UnaryOpExpr(Op.Not, right));
+        }
+        // a getl and an add, or a getl, a not and a sub, per link.
+        assertEquals(1 + 200_000 * 2, code(left));
+        assertEquals(1 + 200_000 * 3, code(right));
+    }
+
+    @Test
+    void nestingPastTheLimitIsAnError() {
+        Expr e = id(0);
+        for (int i = 0; i < Emitter.MAX_NESTING / 2; i++)
+            e = new MethodCallExpr(id(1, "f"), new Expr[] { e });
+        assertFalse(emit(e).hasError());
+        for (int i = 0; i < 100_000; i++)
+            e = new MethodCallExpr(id(1, "f"), new Expr[] { e });
+        var res = emit(e);
+        assertTrue(res.hasError());
+        assertTrue(res.getError().getMessage().startsWith("nested more than"), res.getError().getMessage());
+
+        Stmt s = new ExprStmt(id(0));
+        for (int i = 0; i < 100_000; i++)
+            s = new BlockStmt(new Stmt[] { s });
+        assertTrue(Emitter.emit(new Program("<t>", new Stmt[] { s })).hasError());
+    }
+
+    // the size of the code emitted for `e` less the pop after it and the exit.
+    private static int code(Expr e) {
+        var res = emit(e);
+        assertFalse(res.hasError(), () -> res.getError().toString());
+        var file = res.getValue();
+        return file.limit() - (int)file.getLong(24) - 3;
+    }
+
+    private static src.Result<java.nio.ByteBuffer, Exception> emit(Expr e) {
+        return Emitter.emit(new Program("<t>", new Stmt[] { new ExprStmt(e) }));
+    }
+
+    private static IdentifierL id(int symbol) {
+        return id(symbol, "v" + symbol);
+    }
+
+    private static IdentifierL id(int symbol, String name) {
+        return new IdentifierL(new Token(TokenType.Identifier, name, symbol, 0, name.length(), 0, 0), symbol);
+    }
+}
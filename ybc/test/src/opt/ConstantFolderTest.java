@@ -0,0 +1,242 @@
+package src.opt;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import src.lexer.Token;
+import src.lexer.TokenType;
+import src.parser.AstPrinter;
+import src.parser.NumberValue;
+import src.parser.Parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static src.parser.Node.*;
+
+/**
+ * {@link ConstantFolder} folds what has the same value at every run, and
+ * leaves the rest as it was.
+ */
+class ConstantFolderTest {
+    private static final String[] TYPES = { "z", "s", "i", "l" };
+    private static final Op[] OPS = {
+        Op.Add, Op.Sub, Op.Mul, Op.Div, Op.Pow, Op.BwOr, Op.BwAnd, Op.BwXor, Op.BwNor, Op.BwNand, Op.BwXnor,
+        Op.LeftShift, Op.RightShift, Op.LeftRoll, Op.RightRoll,
+    };
+
+    @Test
+    void randomTreesFoldToTheirValue() {
+        // each tree's value worked out in BigInteger and wrapped to the width.
+        var random = new Random(24);
+        int folded = 0;
+        for (int i = 0; i < 20_000; i++) {
+            var gen = new Gen(random);
+            Expr e = gen.tree(1 + random.nextInt(4));
+            BigInteger want = gen.value(e);
+            if (want == null)
+                continue;
+            Expr f = ConstantFolder.fold(e);
+            assertEquals(want, gen.read(f), () -> print(e) + " => " + print(f));
+            folded++;
+        }
+        assertTrue(folded > 10_000, "only " + folded + " folded.");
+    }
+
+    @Test
+    void typedLiteralsWrap() throws Exception {
+        assertEquals("(Negative 128z)", fold("127z + 1z"));
+        assertEquals("0uz", fold("255uz + 1uz"));
+        assertEquals("255uz", fold("0uz - 1uz"));
+        assertEquals("(Negative 32768s)", fold("32767s + 1s"));
+        assertEquals("0us", fold("65535us + 1us"));
+        assertEquals("(Negative 2147483648i)", fold("2147483647i + 1i"));
+        assertEquals("0ui", fold("4294967295ui + 1ui"));
+        assertEquals("(Negative 9223372036854775808l)", fold("9223372036854775807l + 1l"));
+        assertEquals("0ul", fold("18446744073709551615ul + 1ul"));
+        assertEquals("(Negative 64z)", fold("0x80z >> 1z"));
+        assertEquals("64uz", fold("0x80uz >> 1uz"));
+        assertEquals("3uz", fold("0x81uz <<< 1uz"));
+    }
+
+    @Test
+    void untypedLiteralsThatOverflowStay() throws Exception {
+        assertEquals("3", fold("1 + 2"));
+        assertEquals("1073741824", fold("1 << 30"));
+        assertEquals("2147395600", fold("46340 * 46340"));
+        assertEquals("(Negative 3)", fold("-7 / 2"));
+        for (String s : new String[] { "2147483647 + 1", "1 << 31", "100000 * 100000", "1 << 64", "1z << 8z", "300 + 5z", "5z + 3i" })
+            assertEquals(s, fold(s), s);
+    }
+
+    @Test
+    void timesZeroNeedsAPureInteger() throws Exception {
+        assertEquals("0", fold("(x & 1) * 0"));
+        assertEquals("0", fold("0 * ~x"));
+        assertEquals("1", fold("(x | 1) ** 0"));
+        assertEquals("0", fold("x & 0"));
+        // a float could be a NaN or infinite, a call has to run.
+        for (String s : new String[] { "x * 0", "0 * x", "x ** 0", "x * 0.0", "f() * 0", "(f() & 1) * 0", "(x + 0.5) * 0", "f() & 0" })
+            assertEquals(s, fold(s), s);
+    }
+
+    @Test
+    void identities() throws Exception {
+        for (String s : new String[] { "x * 1", "1 * x", "x + 0", "x - 0", "x / 1", "x ** 1", "+x", "~~x", "x && true", "x || false" })
+            assertEquals("x", fold(s), s);
+        assertEquals("(x Eq y)", fold("!!(x == y)"));
+        assertEquals("false", fold("x && false"));
+        assertEquals("3.75d", fold("1.5 + 2.25"));
+        for (String s : new String[] { "!!x", "f() && false", "1.0 / 0.0", "1.5 + 2f" })
+            assertEquals(s, fold(s), s);
+    }
+
+    @Test
+    void unchangedTreesAreKept() throws Exception {
+        var res = new Parser("a + b * f(c);\n{ x = y; { w; } }\n", "<test>").parseProgram();
+        Program program = res.getValue();
+        assertSame(program, ConstantFolder.fold(program));
+
+        res = new Parser("a + b * f(c);\n{ x = (1 + 2); }\n", "<test>").parseProgram();
+        program = res.getValue();
+        Program folded = ConstantFolder.fold(program);
+        assertNotSame(program, folded);
+        assertSame(program.body()[0], folded.body()[0]);
+        assertEquals("(x Assign 3)", print(((ExprStmt)((BlockStmt)folded.body()[1]).stmts()[0]).expr()));
+    }
+
+    @Test
+    void knownBranchesAreTaken() throws Exception {
+        Stmt a = parse("a"), b = parse("b");
+        assertSame(a, ConstantFolder.fold(new IfStmt(((ExprStmt)parse("1 < 2")).expr(), a, b)));
+        assertSame(b, ConstantFolder.fold(new IfStmt(((ExprStmt)parse("1 > 2")).expr(), a, b)));
+        assertTrue(ConstantFolder.fold(new IfStmt(((ExprStmt)parse("false")).expr(), a, null)) instanceof EmptyStmt);
+        assertTrue(ConstantFolder.fold(new LoopStmt(((ExprStmt)parse("1 == 2")).expr(), a)) instanceof EmptyStmt);
+        var unknown = new IfStmt(((ExprStmt)parse("x < 2")).expr(), a, b);
+        assertSame(unknown, ConstantFolder.fold(unknown));
+    }
+
+    @Test
+    void deepChainsDontOverflow() throws Exception {
+        assertEquals("200001", fold("1" + " + 1".repeat(200_000)));
+        Expr e = ((ExprStmt)parse("x" + " + 1 * 1".repeat(200_000))).expr();
+        int depth = 0;
+        for (Expr f = ConstantFolder.fold(e); f instanceof BinOpExpr n; f = n.left())
+            depth++;
+        assertEquals(200_000, depth);
+    }
+
+    // `s` folded and printed, or `s` itself if nothing changed.
+    private static String fold(String s) throws Exception {
+        Expr e = ((ExprStmt)parse(s)).expr();
+        Expr r = ConstantFolder.fold(e);
+        return r == e ? s : print(r);
+    }
+
+    private static Stmt parse(String s) throws Exception {
+        var res = new Parser(s + ";", "<test>").parseProgram();
+        if (res.hasError())
+            throw res.getError();
+        return res.getValue().body()[0];
+    }
+
+    private static String print(Object node) {
+        return AstPrinter.toString(node);
+    }
+
+    // literal trees of one type and their value, null where the folder
+    // can't know it. Right operands are sometimes untyped literals.
+    private static final class Gen {
+        private final Random random;
+        private final String suffix;
+        private final int width;
+        private final boolean unsigned;
+
+        Gen(Random random) {
+            this.random = random;
+            String type = TYPES[random.nextInt(4)];
+            unsigned = random.nextBoolean();
+            suffix = (unsigned ? "u" : "") + type;
+            width = switch (type) {
+                case "z" -> 8;
+                case "s" -> 16;
+                case "i" -> 32;
+                default -> 64;
+            };
+        }
+
+        Expr tree(int depth) {
+            return tree(depth, false);
+        }
+
+        private Expr tree(int depth, boolean untyped) {
+            if (depth == 0 || random.nextInt(3) == 0) {
+                BigInteger v = new BigInteger(width - (unsigned ? 0 : 1), random).shiftRight(random.nextInt(width));
+                if (untyped && random.nextInt(4) == 0 && v.bitLength() < 7)
+                    return literal(v.toString());
+                Expr e = literal(v + suffix);
+                return !unsigned && random.nextInt(4) == 0 ? new UnaryOpExpr(Op.Negative, e) : e;
+            }
+            if (random.nextInt(8) == 0)
+                return new UnaryOpExpr(Op.BwNot, tree(depth - 1, false));
+            Op op = OPS[random.nextInt(OPS.length)];
+            Expr a = tree(depth - 1, false);
+            boolean shift = op.ordinal() >= Op.LeftShift.ordinal();
+            Expr b = shift || op == Op.Pow ? literal(random.nextInt(shift ? width : 5) + suffix) : tree(depth - 1, true);
+            return new BinOpExpr(op, a, b);
+        }
+
+        BigInteger value(Expr e) {
+            if (e instanceof NumberL n)
+                return wrap(new BigInteger(n.tok().getImage().replaceAll("[a-z]", "")));
+            if (e instanceof UnaryOpExpr n) {
+                BigInteger x = value(n.expr());
+                return x == null ? null : wrap(n.op() == Op.BwNot ? x.not() : x.negate());
+            }
+            var n = (BinOpExpr)e;
+            BigInteger x = value(n.left()), y = value(n.right());
+            if (x == null || y == null)
+                return null;
+            BigInteger m = BigInteger.ONE.shiftLeft(width), ux = x.mod(m);
+            return switch (n.op()) {
+                case Add -> wrap(x.add(y));
+                case Sub -> wrap(x.subtract(y));
+                case Mul -> wrap(x.multiply(y));
+                case Div -> y.signum() == 0 ? null : wrap(x.divide(y));
+                case Pow -> wrap(x.pow(y.intValue()));
+                case BwOr -> wrap(x.or(y));
+                case BwAnd -> wrap(x.and(y));
+                case BwXor -> wrap(x.xor(y));
+                case BwNor -> wrap(x.or(y).not());
+                case BwNand -> wrap(x.and(y).not());
+                case BwXnor -> wrap(x.xor(y).not());
+                case LeftShift -> wrap(x.shiftLeft(y.intValue()));
+                case RightShift -> wrap(x.shiftRight(y.intValue()));
+                case LeftRoll -> wrap(ux.shiftLeft(y.intValue()).or(ux.shiftRight(width - y.intValue())));
+                default -> wrap(ux.shiftRight(y.intValue()).or(ux.shiftLeft(width - y.intValue())));
+            };
+        }
+
+        // a folded literal's value, null if it isn't one.
+        BigInteger read(Expr e) {
+            boolean negative = e instanceof UnaryOpExpr n && n.op() == Op.Negative;
+            if (negative)
+                e = ((UnaryOpExpr)e).expr();
+            if (!(e instanceof NumberL n))
+                return null;
+            long bits = NumberValue.of(n).bits();
+            BigInteger v = unsigned ? new BigInteger(Long.toUnsignedString(bits)) : BigInteger.valueOf(bits);
+            return wrap(negative ? v.negate() : v);
+        }
+
+        private BigInteger wrap(BigInteger v) {
+            BigInteger m = BigInteger.ONE.shiftLeft(width);
+            v = v.mod(m);
+            return !unsigned && v.testBit(width - 1) ? v.subtract(m) : v;
+        }
+
+        private static NumberL literal(String image) {
+            return new NumberL(new Token(TokenType.LNumber, image, -1, 0, image.length(), 1, 1));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package src.opt;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import src.lexer.Token;
+import src.lexer.TokenType;
+import src.parser.AstPrinter;
+import src.parser.NumberValue;
+import src.parser.Parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static src.parser.Node.*;
+
+/**
+ * {@link StrengthReducer} rewrites only where the cheaper operator gives
+ * the same value, checked on random integer trees against an evaluator.
+ */
+class StrengthReducerTest {
+    private static final String[] TYPES = { "z", "s", "i", "l" };
+    private static final Op[] OPS = {
+        Op.Add, Op.Sub, Op.Mul, Op.Mul, Op.Mul, Op.Div, Op.Div, Op.Pow,
+        Op.BwAnd, Op.BwOr, Op.BwXor, Op.LeftShift, Op.RightShift,
+    };
+
+    @Test
+    void randomTreesKeepTheirValue() {
+        var random = new Random(25);
+        int reduced = 0;
+        for (int i = 0; i < 20_000; i++) {
+            var gen = new Gen(random);
+            Expr e = gen.tree(1 + random.nextInt(4));
+            Expr r = StrengthReducer.reduce(e);
+            if (r == e)
+                continue;
+            reduced++;
+            for (int j = 0; j < 4; j++) {
+                long[] env = new long[4];
+                for (int k = 0; k < env.length; k++)
+                    env[k] = gen.wrap(random.nextLong() >> random.nextInt(64));
+                assertEquals(gen.eval(e, env), gen.eval(r, env), () -> print(e) + " => " + print(r));
+            }
+        }
+        assertTrue(reduced > 2_000, "only " + reduced + " trees reduced.");
+    }
+
+    @Test
+    void literalsReduceToTheSameFold() {
+        // a literal times or over a power of two, folded before and after.
+        var random = new Random(3);
+        int reduced = 0;
+        for (int i = 0; i < 20_000; i++) {
+            String t = TYPES[random.nextInt(4)];
+            boolean u = random.nextBoolean();
+            int w = width(t);
+            String s = (u ? "u" : "") + t;
+            Expr a = literal(Long.toUnsignedString(random.nextLong() >>> (64 - w + (u ? 0 : 1))) + s);
+            if (!u && random.nextBoolean())
+                a = new UnaryOpExpr(Op.Negative, a);
+            Op op = new Op[] { Op.Mul, Op.Div, Op.Pow }[random.nextInt(3)];
+            int k = random.nextInt(w - (u ? 0 : 1));
+            String c = op == Op.Pow ? (2 + random.nextInt(2)) + s
+                : random.nextInt(4) == 0 && k <= 30 ? String.valueOf(1L << k) : Long.toUnsignedString(1L << k) + s;
+            Expr e = random.nextBoolean() && op == Op.Mul ? new BinOpExpr(op, literal(c), a) : new BinOpExpr(op, a, literal(c));
+            Expr r = StrengthReducer.reduce(e);
+            if (r == e)
+                continue;
+            reduced++;
+            assertEquals(print(ConstantFolder.fold(e)), print(ConstantFolder.fold(r)), () -> print(e) + " => " + print(r));
+        }
+        assertTrue(reduced > 5_000, "only " + reduced + " reduced.");
+    }
+
+    @Test
+    void onlyKnownIntegersAreShifted() throws Exception {
+        // a name or a call could be a float, a signed integer rounds to zero.
+        String[] same = { "x * 8", "8 * x", "x / 8u", "x *= 8", "x /= 8u", "x * 8.0", "f() * 4", "(x + 1) * 2", "(x & 3) / 4" };
+        for (String s : same)
+            assertEquals(s, reduce(s), s);
+        assertEquals("((x BwAnd 255) LeftShift 3)", reduce("(x & 255) * 8"));
+        assertEquals("((BwNot x) LeftShift 3)", reduce("8 * ~x"));
+        assertEquals("((x BwAnd 7u) RightShift 2u)", reduce("(x & 7u) / 4u"));
+        assertEquals("((1 Add (b BwAnd 1)) LeftShift 1)", reduce("(1 + (b & 1)) * 2"));
+        assertEquals("((x LeftShift 2) LeftShift 2)", reduce("(x << 2) * 4"));
+    }
+
+    @Test
+    void powers() throws Exception {
+        assertEquals("(x Mul x)", reduce("x ** 2"));
+        assertEquals("(x Mul x)", reduce("x ** 2.0"));
+        assertEquals("((x Mul x) Mul x)", reduce("x ** 3"));
+        assertEquals("(x MulAssign x)", reduce("x **= 2"));
+        assertEquals("(x Assign ((x Mul x) Mul x))", reduce("x **= 3"));
+        assertEquals("((x Add y) Mul (x Add y))", reduce("(x + y) ** 2"));
+        for (String s : new String[] { "f() ** 2", "(x + y) ** 3", "x ** 4" })
+            assertEquals(s, reduce(s), s);
+    }
+
+    // `s` reduced and printed, or `s` itself if nothing changed.
+    private static String reduce(String s) throws Exception {
+        var res = new Parser(s + ";", "<test>").parseProgram();
+        if (res.hasError())
+            throw res.getError();
+        Expr e = ((ExprStmt)res.getValue().body()[0]).expr();
+        Expr r = StrengthReducer.reduce(e);
+        return r == e ? s : print(r);
+    }
+
+    private static String print(Expr e) {
+        return AstPrinter.toString(e);
+    }
+
+    private static NumberL literal(String image) {
+        return new NumberL(new Token(TokenType.LNumber, image, -1, 0, image.length(), 1, 1));
+    }
+
+    private static int width(String type) {
+        return switch (type) {
+            case "z" -> 8;
+            case "s" -> 16;
+            case "i" -> 32;
+            default -> 64;
+        };
+    }
+
+    // integer trees of one type over four names, and their value. A value
+    // is kept sign extended if it's signed, zero extended if it isn't.
+    private static final class Gen {
+        private final Random random;
+        private final String suffix;
+        private final int width;
+        private final boolean unsigned;
+
+        Gen(Random random) {
+            this.random = random;
+            String type = TYPES[random.nextInt(4)];
+            unsigned = random.nextBoolean();
+            suffix = (unsigned ? "u" : "") + type;
+            width = width(type);
+        }
+
+        Expr tree(int depth) {
+            if (depth == 0 || random.nextInt(4) == 0) {
+                if (random.nextBoolean()) {
+                    int symbol = random.nextInt(4);
+                    String name = "x" + symbol;
+                    return new IdentifierL(new Token(TokenType.Identifier, name, symbol, 0, name.length(), 1, 1), symbol);
+                }
+                return number(random.nextInt(1 << random.nextInt(Math.min(12, width - 1))));
+            }
+            switch (random.nextInt(10)) {
+                case 0:
+                    return new UnaryOpExpr(Op.BwNot, tree(depth - 1));
+                case 1:
+                    if (!unsigned)
+                        return new UnaryOpExpr(Op.Negative, tree(depth - 1));
+                    break;
+                default:
+                    break;
+            }
+            Op op = OPS[random.nextInt(OPS.length)];
+            Expr a = tree(depth - 1);
+            Expr b = switch (op) {
+                case Pow -> number(2 + random.nextInt(2));
+                case LeftShift, RightShift -> number(random.nextInt(width));
+                case Mul, Div -> random.nextBoolean() ? number(1L << random.nextInt(width - 1)) : number(1 + random.nextInt(100));
+                default -> tree(depth - 1);
+            };
+            return op == Op.Mul && random.nextBoolean() ? new BinOpExpr(op, b, a) : new BinOpExpr(op, a, b);
+        }
+
+        private Expr number(long v) {
+            return literal(v + suffix);
+        }
+
+        long wrap(long v) {
+            int shift = 64 - width;
+            return unsigned ? (v << shift) >>> shift : (v << shift) >> shift;
+        }
+
+        long eval(Expr e, long[] env) {
+            if (e instanceof IdentifierL n)
+                return env[n.symbol()];
+            if (e instanceof NumberL n)
+                return wrap(NumberValue.of(n).bits());
+            if (e instanceof UnaryOpExpr n) {
+                long x = eval(n.expr(), env);
+                return wrap(n.op() == Op.BwNot ? ~x : -x);
+            }
+            var n = (BinOpExpr)e;
+            long x = eval(n.left(), env), y = eval(n.right(), env);
+            return wrap(switch (n.op()) {
+                case Add -> x + y;
+                case Sub -> x - y;
+                case Mul -> x * y;
+                case Div -> unsigned ? Long.divideUnsigned(x, y) : x / y;
+                case Pow -> y == 2 ? x * x : x * x * x;
+                case BwAnd -> x & y;
+                case BwOr -> x | y;
+                case BwXor -> x ^ y;
+                case LeftShift -> x << y;
+                case RightShift -> unsigned ? x >>> y : x >> y;
+                default -> throw new AssertionError(n.op());
+            });
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package src.parser;
+
+import java.lang.reflect.RecordComponent;
+
+import org.junit.jupiter.api.Test;
+
+import src.lexer.Token;
+import src.lexer.TokenType;
+import src.parser.AstArena.Kind;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static src.parser.Node.*;
+
+/**
+ * {@link AstArena} holds what the records do, ids in pre-order, whether
+ * it's parsed into directly or flattened from a tree.
+ */
+class AstArenaTest {
+    @Test
+    void kindsFollowTheRecords() {
+        assertEquals(AstWriter.KINDS.length, Kind.values().length);
+        for (var kind : Kind.values()) {
+            Class<?> type = AstWriter.KINDS[kind.ordinal()];
+            assertEquals(type.getSimpleName(), kind.name());
+            RecordComponent[] components = type.getRecordComponents();
+            assertEquals(components.length, kind.components, kind.name());
+            for (int i = 0; i < components.length; i++) {
+                Class<?> c = components[i].getType();
+                char shape = c.isArray() ? 'l' : c.isRecord() || c.isInterface() ? 'n' : 'v';
+                assertEquals(shape, kind.shape.charAt(i), kind.name() + "." + components[i].getName());
+            }
+        }
+    }
+
+    @Test
+    void idsArePreOrder() throws Exception {
+        AstArena arena = parse("a + 1 * f(x, y);\n{ b; }\n");
+        Kind[] kinds = {
+            Kind.Program, Kind.ExprStmt, Kind.BinOpExpr, Kind.IdentifierL, Kind.BinOpExpr, Kind.NumberL,
+            Kind.MethodCallExpr, Kind.IdentifierL, Kind.IdentifierL, Kind.IdentifierL,
+            Kind.BlockStmt, Kind.ExprStmt, Kind.IdentifierL,
+        };
+        assertEquals(kinds.length, arena.size());
+        for (int id = 0; id < kinds.length; id++)
+            assertEquals(kinds[id], arena.kind(id), "node " + id);
+
+        assertEquals(0, arena.root());
+        assertEquals("<test>", arena.string(0, 0));
+        assertEquals(2, arena.count(0, 1));
+        assertEquals(1, arena.child(0, 1, 0));
+        assertEquals(10, arena.child(0, 1, 1));
+        assertEquals(Op.Add, arena.op(2));
+        assertEquals(3, arena.child(2, 1));
+        assertEquals(4, arena.child(2, 2));
+        assertEquals(Op.Mul, arena.op(4));
+        assertEquals(2, arena.count(6, 1));
+        assertEquals(9, arena.child(6, 1, 1));
+        assertEquals(1, arena.count(10, 0));
+        assertEquals(11, arena.child(10, 0, 0));
+
+        int tok = arena.token(5, 0);
+        assertEquals(TokenType.LNumber, arena.tokenType(tok));
+        assertEquals("1", arena.tokenImage(tok));
+        assertEquals(4, arena.tokenOffset(tok));
+        assertEquals(1, arena.tokenLength(tok));
+        tok = arena.token(12, 0);
+        assertEquals("b", arena.tokenImage(tok));
+        assertEquals(arena.tokenSymbol(tok), arena.value(12, 1));
+        assertNotEquals(arena.tokenLine(arena.token(3, 0)), arena.tokenLine(tok));
+    }
+
+    @Test
+    void parsingMatchesFlattening() throws Exception {
+        String source = "x := [1 2 [3]] ** -y++;\n; { f(g(1), 2.5f)[i].z = !true; }\nnull ~^ p!;\n";
+        Program program = new Parser(source, "<test>").parseProgram().getValue();
+        AstArena parsed = parse(source);
+        assertMatches(program, parsed, 0);
+        assertMatches(program, AstArena.of(program), 0);
+    }
+
+    @Test
+    void viewsAreTheRecords() throws Exception {
+        AstArena arena = parse("x := [1 2 [3]] ** -y++;\n; { f(g(1), 2.5f)[i].z = !true; }\nnull ~^ p!;\n");
+        assertEquals(arena.size(), assertMatches(arena.view(0), arena, 0));
+        for (int id = 1; id < arena.size(); id++)
+            assertMatches(arena.view(id), arena, id);
+        assertTrue(arena.view(0) instanceof Program p && p.body().length == 4);
+        assertTrue(arena.view(arena.child(0, 1, 1)) instanceof EmptyStmt);
+        assertTrue(arena.view(arena.child(0, 1, 0)) instanceof ExprStmt s && s.expr() instanceof BinOpExpr b
+            && b.op() == Op.Pow && b.left() instanceof BinOpExpr d && d.op() == Op.DeclAssign);
+    }
+
+    @Test
+    void nullsAndEmptyLists() throws Exception {
+        var call = new MethodCallExpr(null, new Expr[] { null, new NullL(null) });
+        var clz = new ClassStmt(null, null, new ClassField[0], null);
+        AstArena arena = AstArena.of(new Program(null, new Stmt[] { new ExprStmt(call), clz, new BreakStmt(null) }));
+        assertNull(arena.string(0, 0));
+        assertEquals(Kind.MethodCallExpr, arena.kind(2));
+        assertEquals(-1, arena.child(2, 0));
+        assertEquals(2, arena.count(2, 1));
+        assertEquals(-1, arena.child(2, 1, 0));
+        assertEquals(Kind.NullL, arena.kind(arena.child(2, 1, 1)));
+        assertEquals(-1, arena.token(arena.child(2, 1, 1), 0));
+        assertEquals(Kind.ClassStmt, arena.kind(4));
+        assertEquals(-1, arena.count(4, 0));
+        assertEquals(-1, arena.child(4, 1));
+        assertEquals(0, arena.count(4, 2));
+        assertEquals(-1, arena.count(4, 3));
+        assertEquals(-1, arena.child(5, 0));
+        assertEquals(6, arena.size());
+
+        var view = (ClassStmt)arena.view(4);
+        assertNull(view.mods());
+        assertNull(view.name());
+        assertEquals(0, view.fields().length);
+        assertNull(view.methods());
+        var args = ((MethodCallExpr)arena.view(2)).args();
+        assertNull(args[0]);
+        assertTrue(args[1] instanceof NullL n && n.tok() == null);
+        for (int id = 0; id < arena.size(); id++)
+            assertMatches(arena.view(id), arena, id);
+    }
+
+    @Test
+    void valuesAndStrings() {
+        var tok = new Token(TokenType.LString, "\"m\"", -1, 0, 3, 1, 1);
+        var mods = new Modifier[] { new NativeM(ABI.C, new StringL(tok, "m"), null), new NativeM(null, null, null) };
+        var method = new ClassMethod(mods, null, new Arg[0], null, true, new EmptyStmt());
+        var c = new CharL(new Token(TokenType.LCharacter, "'c'", -1, 4, 3, 1, 5), 'c');
+        AstArena arena = AstArena.of(new ClassStmt(null, null, null, new ClassMethod[] { method }));
+        assertEquals(Kind.ClassMethod, arena.kind(1));
+        assertEquals(1, arena.value(1, 4));
+        assertEquals(Kind.EmptyStmt, arena.kind(arena.child(1, 5)));
+        int nativeM = arena.child(1, 0, 0);
+        assertEquals(ABI.C.ordinal(), arena.value(nativeM, 0));
+        assertEquals("m", arena.string(arena.child(nativeM, 1), 1));
+        assertEquals(-1, arena.child(nativeM, 2));
+        assertEquals(-1, arena.value(arena.child(1, 0, 1), 0));
+
+        arena = AstArena.of(new ExprStmt(new BinOpExpr(null, c, new BoolL(null, true))));
+        assertNull(arena.op(1));
+        assertEquals('c', arena.value(2, 1));
+        assertEquals(1, arena.value(3, 1));
+    }
+
+    @Test
+    void deepTreesDontOverflow() throws Exception {
+        AstArena arena = parse("x" + " + a".repeat(200_000) + ";");
+        assertEquals(2 + 200_000 * 2 + 1, arena.size());
+        int depth = 0;
+        for (int id = arena.child(1, 0); arena.kind(id) == Kind.BinOpExpr; id = arena.child(id, 1))
+            depth++;
+        assertEquals(200_000, depth);
+        depth = 0;
+        for (Expr e = ((ExprStmt)arena.view(1)).expr(); e instanceof BinOpExpr n; e = n.left())
+            depth++;
+        assertEquals(200_000, depth);
+
+        Expr e = new NumberL(null);
+        for (int i = 0; i < 200_000; i++)
+            e = new UnaryOpExpr(Op.Negative, e);
+        assertEquals(200_001, AstArena.of(e).size());
+    }
+
+    @Test
+    void parseErrorsAreResults() throws Exception {
+        var res = AstArena.parse(new Parser("a;\nb + ;\n", "<test>"));
+        assertTrue(res.hasError());
+    }
+
+    private static AstArena parse(String source) throws Exception {
+        var res = AstArena.parse(new Parser(source, "<test>"));
+        if (res.hasError())
+            throw res.getError();
+        return res.getValue();
+    }
+
+    // the node `id` is `expected`, the ids that follow it its subtree.
+    private static int assertMatches(Object expected, AstArena arena, int id) throws Exception {
+        if (expected == null) {
+            assertEquals(-1, id);
+            return 0;
+        }
+        assertEquals(expected.getClass().getSimpleName(), arena.kind(id).name());
+        int size = 1;
+        RecordComponent[] components = expected.getClass().getRecordComponents();
+        for (int i = 0; i < components.length; i++) {
+            Object value = components[i].getAccessor().invoke(expected);
+            if (value instanceof Object[] items) {
+                assertEquals(items.length, arena.count(id, i));
+                for (int j = 0; j < items.length; j++) {
+                    int child = arena.child(id, i, j);
+                    if (items[j] != null)
+                        assertEquals(id + size, child, "not pre-order");
+                    size += assertMatches(items[j], arena, child);
+                }
+            } else if (value instanceof Token tok) {
+                int t = arena.token(id, i);
+                assertEquals(tok.getType(), arena.tokenType(t));
+                assertEquals(tok.getImage(), arena.tokenImage(t));
+                assertEquals(tok.getSymbol(), arena.tokenSymbol(t));
+                assertEquals(tok.getOffset(), arena.tokenOffset(t));
+                assertEquals(tok.getLength(), arena.tokenLength(t));
+                assertEquals(tok.getLine(), arena.tokenLine(t));
+                assertEquals(tok.getColumn(), arena.tokenColumn(t));
+            } else if (value instanceof Op op)
+                assertEquals(op, arena.op(id));
+            else if (value instanceof Integer n)
+                assertEquals(n, arena.value(id, i));
+            else if (value instanceof Boolean b)
+                assertEquals(b ? 1 : 0, arena.value(id, i));
+            else if (value instanceof String s)
+                assertEquals(s, arena.string(id, i));
+            else if (value != null || components[i].getType().isRecord() || components[i].getType().isInterface()) {
+                int child = arena.child(id, i);
+                if (value != null)
+                    assertEquals(id + size, child, "not pre-order");
+                size += assertMatches(value, arena, child);
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,441 @@
+package src.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import src.lexer.SymbolTable;
+import src.lexer.Token;
+import src.lexer.TokenType;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static src.parser.Node.*;
+
+/**
+ * Every record written by {@link AstWriter} and read back by
+ * {@link AstReader} compares equal, tokens and symbols included.
+ */
+class AstRoundTripTest {
+    private static final Stmt[] NO_STMTS = {};
+    private static final Expr[] NO_EXPRS = {};
+    private static final Modifier[] NO_MODS = {};
+    private static final Arg[] NO_ARGS = {};
+    private static final ClassMethod[] NO_METHODS = {};
+
+    // the record types the tests below wrote, checked against AstWriter.KINDS.
+    private static final Set<Class<?>> written = new HashSet<>();
+
+    private int offset = 40, line = 3;
+
+    @Test
+    void program() throws IOException {
+        roundTrip(new Program("<test>", NO_STMTS));
+        roundTrip(new Program(null, new Stmt[] { new EmptyStmt(), new ExprStmt(id("x", 0)) }));
+    }
+
+    @Test
+    void unaryOpExpr() throws IOException {
+        roundTrip(expr(new UnaryOpExpr(Op.Negative, number("1"))));
+        roundTrip(expr(new UnaryOpExpr(Op.PostInc, null)));
+    }
+
+    @Test
+    void binOpExpr() throws IOException {
+        roundTrip(expr(new BinOpExpr(Op.Add, id("a", 0), number("2i"))));
+        roundTrip(expr(new BinOpExpr(Op.RightRoll, null, null)));
+    }
+
+    @Test
+    void methodCallExpr() throws IOException {
+        roundTrip(expr(new MethodCallExpr(id("f", 0), new Expr[] { id("x", 1), null, string("s") })));
+        roundTrip(expr(new MethodCallExpr(id("g", 2), NO_EXPRS)));
+    }
+
+    @Test
+    void ifExpr() throws IOException {
+        roundTrip(expr(new IfExpr(bool(true), number("1"), number("2"))));
+        roundTrip(expr(new IfExpr(null, null, null)));
+    }
+
+    @Test
+    void loopExpr() throws IOException {
+        roundTrip(expr(new LoopExpr(bool(false), id("x", 0))));
+        roundTrip(expr(new LoopExpr(null, null)));
+    }
+
+    @Test
+    void loopElseExpr() throws IOException {
+        roundTrip(expr(new LoopElseExpr(id("c", 0), id("b", 1), id("o", 2))));
+        roundTrip(expr(new LoopElseExpr(null, null, null)));
+    }
+
+    @Test
+    void switchExpr() throws IOException {
+        var cases = new SwitchExprCase[] {
+            new SwitchExprCase(new Expr[] { number("1"), number("2") }, string("a")),
+            new SwitchExprCase(NO_EXPRS, null),
+        };
+        roundTrip(expr(new SwitchExpr(id("x", 0), cases)));
+        roundTrip(expr(new SwitchExpr(null, new SwitchExprCase[0])));
+    }
+
+    @Test
+    void breakContinueReturnIfExpr() throws IOException {
+        roundTrip(expr(new BreakIfExpr(bool(true), number("0"))));
+        roundTrip(expr(new BreakIfExpr(null, null)));
+        roundTrip(expr(new ContinueIfExpr(id("c", 0), null)));
+        roundTrip(expr(new ReturnIfExpr(null, id("v", 1))));
+    }
+
+    @Test
+    void fnExpr() throws IOException {
+        var args = new Arg[] { new Arg(id("n", 0), base("i32", 1)), new Arg(null, null) };
+        roundTrip(expr(new FnExpr(args, base("i32", 1), new ReturnStmt(id("n", 0)))));
+        roundTrip(expr(new FnExpr(NO_ARGS, null, null)));
+    }
+
+    @Test
+    void simpleStmts() throws IOException {
+        roundTrip(stmt(new EmptyStmt()));
+        roundTrip(stmt(new ExprStmt(null)));
+        roundTrip(stmt(new BlockStmt(new Stmt[] { new EmptyStmt(), null, new BlockStmt(NO_STMTS) })));
+        roundTrip(stmt(new BreakStmt(null)));
+        roundTrip(stmt(new BreakStmt(number("1"))));
+        roundTrip(stmt(new ReturnStmt(null)));
+        roundTrip(stmt(new ContinueStmt(id("x", 0))));
+        roundTrip(stmt(new ImplReturnStmt(null)));
+    }
+
+    @Test
+    void ifAndLoopStmt() throws IOException {
+        roundTrip(stmt(new IfStmt(bool(true), new EmptyStmt(), null)));
+        roundTrip(stmt(new IfStmt(null, null, new BlockStmt(NO_STMTS))));
+        roundTrip(stmt(new LoopStmt(null, new ExprStmt(id("x", 0)))));
+        roundTrip(stmt(new LoopStmt(id("c", 1), null)));
+    }
+
+    @Test
+    void switchStmt() throws IOException {
+        var cases = new SwitchCase[] {
+            new SwitchCase(new Expr[] { number("1") }, new EmptyStmt()),
+            new SwitchCase(NO_EXPRS, null),
+        };
+        roundTrip(stmt(new SwitchStmt(id("x", 0), cases)));
+        roundTrip(stmt(new SwitchStmt(null, new SwitchCase[0])));
+    }
+
+    @Test
+    void enumStmt() throws IOException {
+        roundTrip(stmt(new EnumStmt(new Modifier[] { new PrivateM() }, base("Color", 0),
+            new IdentifierL[] { id("Red", 1), id("Green", 2) })));
+        roundTrip(stmt(new EnumStmt(NO_MODS, null, new IdentifierL[0])));
+    }
+
+    @Test
+    void classStmt() throws IOException {
+        var fields = new ClassField[] {
+            new ClassField(new Modifier[] { new FinalM() }, id("x", 1), base("i32", 2), number("0")),
+            new ClassField(NO_MODS, null, null, null),
+        };
+        var methods = new ClassMethod[] {
+            new ClassMethod(new Modifier[] { new InstanceM(), new ProtectedM() }, id("get", 3), NO_ARGS,
+                base("i32", 2), true, new ReturnStmt(id("x", 1))),
+            new ClassMethod(NO_MODS, null, NO_ARGS, null, false, null),
+        };
+        roundTrip(stmt(new ClassStmt(NO_MODS, base("Point", 0), fields, methods)));
+        roundTrip(stmt(new ClassStmt(NO_MODS, null, new ClassField[0], NO_METHODS)));
+    }
+
+    @Test
+    void interfStmt() throws IOException {
+        var methods = new Method[] {
+            new Method(id("size", 1), new Arg[] { new Arg(id("a", 2), null) }, base("i64", 3)),
+            new Method(null, NO_ARGS, null),
+        };
+        roundTrip(stmt(new InterfStmt(new Modifier[] { new PrivateM() }, base("Sized", 0), methods)));
+        roundTrip(stmt(new InterfStmt(NO_MODS, null, new Method[0])));
+    }
+
+    @Test
+    void primitiveAndImplStmt() throws IOException {
+        var native_ = new NativeM(ABI.C, string("puts"), string("libc"));
+        var methods = new ClassMethod[] {
+            new ClassMethod(new Modifier[] { native_ }, id("puts", 2), NO_ARGS, null, false, null),
+        };
+        roundTrip(stmt(new PrimitiveStmt(NO_MODS, base("u8", 0), base("i8", 1), methods)));
+        roundTrip(stmt(new PrimitiveStmt(NO_MODS, null, null, NO_METHODS)));
+        roundTrip(stmt(new ImplStmt(NO_MODS, base("Point", 0), base("Sized", 1), methods)));
+        roundTrip(stmt(new ImplStmt(NO_MODS, null, null, NO_METHODS)));
+    }
+
+    @Test
+    void modifiers() throws IOException {
+        var mods = new Modifier[] {
+            new InstanceM(), new PrivateM(), new ProtectedM(), new FinalM(),
+            new NativeM(ABI.C, string("f"), null), new NativeM(null, null, null), null,
+        };
+        roundTrip(stmt(new ClassStmt(mods, base("M", 0), new ClassField[0], NO_METHODS)));
+    }
+
+    @Test
+    void literals() throws IOException {
+        roundTrip(expr(id("name", 7)));
+        roundTrip(expr(new IdentifierL(null, -1)));
+        roundTrip(expr(new IdentifierL(token(TokenType.KThis, "this", -1), 9)));
+        roundTrip(expr(new CharL(token(TokenType.LCharacter, "'\\n'", 4), '\n')));
+        roundTrip(expr(new CharL(null, '\uffff')));
+        roundTrip(expr(string("héllo ")));
+        roundTrip(expr(new StringL(null, null)));
+        roundTrip(expr(number("0x7fuz")));
+        roundTrip(expr(new NumberL(null)));
+        roundTrip(expr(new ArrayL(new Expr[] { number("1"), null, new ArrayL(NO_EXPRS) })));
+        roundTrip(expr(bool(true)));
+        roundTrip(expr(new BoolL(null, false)));
+        roundTrip(expr(new NullL(token(TokenType.KNull, "null", -1))));
+        roundTrip(expr(new NullL(null)));
+    }
+
+    @Test
+    void types() throws IOException {
+        roundTrip(expr(base("i32", 0)));
+        roundTrip(expr(new BaseT(null)));
+        roundTrip(expr(new TrashT()));
+        roundTrip(expr(new ArrayT(base("i8", 1))));
+        roundTrip(expr(new ArrayT(null)));
+        roundTrip(expr(new SizedArrayT(base("i8", 1), number("16"))));
+        roundTrip(expr(new SizedArrayT(null, null)));
+        roundTrip(expr(new GenericT(base("List", 2), new TypeExpr[] { base("i32", 0), null })));
+        roundTrip(expr(new GenericT(null, new TypeExpr[0])));
+        roundTrip(expr(new ExtendedT(base("T", 3), new TypeExpr[] { base("Sized", 4) })));
+        roundTrip(expr(new ExtendedT(null, new TypeExpr[0])));
+        roundTrip(expr(new NullableT(base("i32", 0))));
+        roundTrip(expr(new NullableT(null)));
+        roundTrip(expr(new FnT(new Arg[] { new Arg(id("a", 5), new TrashT()) }, base("i32", 0))));
+        roundTrip(expr(new FnT(NO_ARGS, null)));
+    }
+
+    @Test
+    void tokensKeepTheirFields() throws IOException {
+        // positions going back, an image that isn't the symbol's name, and
+        // a fixed token with an image of its own.
+        var a = new Token(TokenType.Identifier, "a", 0, 500, 1, 20, 4);
+        var b = new Token(TokenType.Identifier, "a", 0, 10, 1, 2, 0);
+        var c = new Token(TokenType.LNumber, "1_000", 1, 11, 5, 2, 1);
+        var t = new Token(TokenType.KTrue, "TRUE", -1, 0, 4, 0, 0);
+        roundTrip(new Program("<t>", new Stmt[] {
+            new ExprStmt(new IdentifierL(a, 0)), new ExprStmt(new IdentifierL(b, 0)),
+            new ExprStmt(new NumberL(c)), new ExprStmt(new BoolL(t, true)),
+            new ExprStmt(new NumberL(new Token(TokenType.LNumber, null, -1, 3, 0, 1, 0))),
+        }));
+    }
+
+    @Test
+    void symbolsAreInternedIntoATable() throws IOException {
+        var program = new Program("<t>", new Stmt[] { expr(id("x", 40)), expr(id("y", 41)), expr(id("x", 40)) });
+        var table = new SymbolTable();
+        int y = table.intern("y");
+        Program read = (Program)new AstReader(write(program), table).read();
+        int x = table.intern("x");
+        assertEquals(y, ((IdentifierL)((ExprStmt)read.body()[1]).expr()).symbol());
+        assertEquals(x, ((IdentifierL)((ExprStmt)read.body()[0]).expr()).symbol());
+        assertEquals(x, ((IdentifierL)((ExprStmt)read.body()[2]).expr()).symbol());
+        assertEquals(x, ((IdentifierL)((ExprStmt)read.body()[2]).expr()).tok().getSymbol());
+    }
+
+    @Test
+    void manyNodesInOneStream() throws IOException {
+        var out = new ByteArrayOutputStream();
+        Node[] nodes = { expr(id("a", 0)), stmt(new EmptyStmt()), new Program("<p>", NO_STMTS), expr(id("a", 0)) };
+        try (var writer = new AstWriter(out)) {
+            for (var node : nodes)
+                writer.write(node);
+        }
+        var reader = new AstReader(ByteBuffer.wrap(out.toByteArray()));
+        for (var node : nodes) {
+            assertTrue(reader.hasNext());
+            assertDeepEquals(node, reader.read(), "");
+        }
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void deepTreesDontOverflow() throws IOException {
+        Expr e = id("x", 0);
+        for (int i = 0; i < 200_000; i++)
+            e = new BinOpExpr(Op.Add, e, id("a", 1));
+        Node read = new AstReader(write(expr(e))).read();
+        int depth = 0;
+        for (e = ((ExprStmt)read).expr(); e instanceof BinOpExpr n; e = n.left())
+            depth++;
+        assertEquals(200_000, depth);
+    }
+
+    @Test
+    void brokenStreamsAreIOExceptions() throws IOException {
+        ByteBuffer buf = write(stmt(new ExprStmt(new BinOpExpr(Op.Add, id("a", 0), number("1")))));
+        for (int size = 8; size < buf.limit(); size++) {
+            var truncated = buf.duplicate().limit(size);
+            try {
+                new AstReader(truncated).read();
+                fail("read a stream cut at " + size + ".");
+            } catch (IOException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    void nullArraysStayNull() throws IOException {
+        roundTrip(stmt(new ClassStmt(null, null, new ClassField[0], null)));
+        roundTrip(stmt(new ClassStmt(NO_MODS, null, null, NO_METHODS)));
+        roundTrip(new Program("<test>", null));
+        roundTrip(expr(new MethodCallExpr(id("f", 0), null)));
+        roundTrip(expr(new ArrayL(new Expr[] { new ArrayL(null), new ArrayL(NO_EXPRS) })));
+        roundTrip(expr(new FnExpr(null, new FnT(null, null), new BlockStmt(null))));
+    }
+
+    @Test
+    void countsPastTheEndAreIOExceptions() throws IOException {
+        // a block of 2^28 statements, then a string as long, in streams of a few bytes.
+        int block = Arrays.asList(AstWriter.KINDS).indexOf(BlockStmt.class) + 1;
+        int strings = Arrays.asList(AstWriter.KINDS).indexOf(Program.class) + 1;
+        for (byte[] bytes : new byte[][] {
+            { (byte)block, (byte)0x81, (byte)0x80, (byte)0x80, (byte)0x80, 0x01, 0 },
+            { (byte)strings, 1, (byte)0x80, (byte)0x80, (byte)0x80, (byte)0x80, 0x01, 'a' },
+        }) {
+            var buf = ByteBuffer.allocate(5 + bytes.length).putInt(AstWriter.MAGIC).put((byte)AstWriter.FORMAT).put(bytes).flip();
+            var e = assertThrows(IOException.class, () -> new AstReader(buf).read());
+            assertTrue(e.getMessage().startsWith("bad count"), e.getMessage());
+        }
+    }
+
+    @Test
+    void everyKindIsCovered() throws IOException {
+        program();
+        unaryOpExpr();
+        binOpExpr();
+        methodCallExpr();
+        ifExpr();
+        loopExpr();
+        loopElseExpr();
+        switchExpr();
+        breakContinueReturnIfExpr();
+        fnExpr();
+        simpleStmts();
+        ifAndLoopStmt();
+        switchStmt();
+        enumStmt();
+        classStmt();
+        interfStmt();
+        primitiveAndImplStmt();
+        modifiers();
+        literals();
+        types();
+        for (var kind : AstWriter.KINDS)
+            assertTrue(written.contains(kind), kind.getSimpleName() + " isn't round-tripped.");
+    }
+
+    private void roundTrip(Node node) throws IOException {
+        collect(node);
+        assertDeepEquals(node, new AstReader(write(node)).read(), "");
+    }
+
+    private static ByteBuffer write(Node node) throws IOException {
+        var out = new ByteArrayOutputStream();
+        try (var writer = new AstWriter(out)) {
+            writer.write(node);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static void assertDeepEquals(Object expected, Object actual, String path) {
+        if (expected == null || actual == null) {
+            assertEquals(expected, actual, path);
+            return;
+        }
+        assertEquals(expected.getClass(), actual.getClass(), path);
+        if (expected instanceof Object[] a) {
+            var b = (Object[])actual;
+            assertEquals(a.length, b.length, path + ".length");
+            for (int i = 0; i < a.length; i++)
+                assertDeepEquals(a[i], b[i], path + "[" + i + "]");
+        } else if (expected instanceof Token a) {
+            var b = (Token)actual;
+            assertEquals(a.getType(), b.getType(), path + ".type");
+            assertEquals(a.getImage(), b.getImage(), path + ".image");
+            assertEquals(a.getSymbol(), b.getSymbol(), path + ".symbol");
+            assertEquals(a.getOffset(), b.getOffset(), path + ".offset");
+            assertEquals(a.getLength(), b.getLength(), path + ".length");
+            assertEquals(a.getLine(), b.getLine(), path + ".line");
+            assertEquals(a.getColumn(), b.getColumn(), path + ".column");
+        } else if (expected instanceof Record) {
+            for (RecordComponent c : expected.getClass().getRecordComponents()) {
+                try {
+                    assertDeepEquals(c.getAccessor().invoke(expected), c.getAccessor().invoke(actual),
+                        path + "." + c.getName());
+                } catch (ReflectiveOperationException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        } else
+            assertEquals(expected, actual, path);
+    }
+
+    private static void collect(Object node) {
+        if (node instanceof Object[] nodes) {
+            for (var n : nodes)
+                collect(n);
+        } else if (node instanceof Record) {
+            written.add(node.getClass());
+            for (RecordComponent c : node.getClass().getRecordComponents()) {
+                try {
+                    collect(c.getAccessor().invoke(node));
+                } catch (ReflectiveOperationException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+    }
+
+    private static ExprStmt expr(Expr e) {
+        return new ExprStmt(e);
+    }
+
+    private static Program stmt(Stmt s) {
+        return new Program("<test>", new Stmt[] { s });
+    }
+
+    // a token somewhere after the previous one, to exercise the deltas.
+    private Token token(TokenType type, String image, int symbol) {
+        offset += 7;
+        if (offset % 3 == 0)
+            line++;
+        return new Token(type, image, symbol, offset, image.length(), line, offset % 11);
+    }
+
+    private IdentifierL id(String name, int symbol) {
+        return new IdentifierL(token(TokenType.Identifier, name, symbol), symbol);
+    }
+
+    private BaseT base(String name, int symbol) {
+        return new BaseT(token(TokenType.Identifier, name, symbol));
+    }
+
+    private NumberL number(String image) {
+        return new NumberL(token(TokenType.LNumber, image, -1));
+    }
+
+    private StringL string(String value) {
+        return new StringL(token(TokenType.LString, "\"" + value + "\"", -1), value);
+    }
+
+    private BoolL bool(boolean value) {
+        return new BoolL(token(value ? TokenType.KTrue : TokenType.KFalse, String.valueOf(value), -1), value);
+    }
+}
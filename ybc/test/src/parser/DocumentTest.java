@@ -0,0 +1,111 @@
+package src.parser;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import src.Result;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static src.parser.Node.*;
+
+/**
+ * A {@link Document} after any run of edits holds what parsing its text
+ * from scratch would give.
+ */
+class DocumentTest {
+    private static final String SOURCE = "x := [1 2 [3]] ** -y++;\n; { f(g(1), 2.5f)[i].z = !true; }\nnull ~^ p!;\n";
+    private static final String[] STMTS = {
+        "a + b;\n", "{ c = d; }\n", ";\n", "f(x)[1] = 2;\n", "{\n{ e; }\n}\n", "-q++ ** 3u;\n",
+    };
+    private static final String[] PIECES = {
+        "x", "y1", " ", "\n", "1", "2.5f", "+", "-", "*", "**", "=", ":=", "!", "~", "++",
+        "(", ")", "[", "]", "{", "}", ";", ",", "f(", "null", "true",
+    };
+
+    @Test
+    void editsMatchAFreshParse() throws Exception {
+        var random = new Random(14);
+        var doc = new Document(SOURCE, "<test>");
+        var text = new StringBuilder(SOURCE);
+        String good = SOURCE;
+        boolean broken = false;
+        int errors = 0;
+        for (int i = 0; i < 3_000; i++) {
+            int offset, removed;
+            String inserted;
+            if (random.nextInt(3) == 0) {
+                // whole statements, at a line start.
+                offset = text.lastIndexOf("\n", random.nextInt(text.length() + 1) - 1) + 1;
+                removed = random.nextBoolean() ? 0 : text.indexOf("\n", offset) + 1 - offset;
+                if (removed < 0)
+                    removed = 0;
+                inserted = random.nextInt(4) == 0 ? "" : STMTS[random.nextInt(STMTS.length)];
+            } else {
+                offset = random.nextInt(text.length() + 1);
+                removed = random.nextInt(Math.min(4, text.length() - offset) + 1);
+                inserted = random.nextInt(4) == 0 ? "" : PIECES[random.nextInt(PIECES.length)];
+            }
+            // keep the text from growing without end.
+            if (text.length() > 2_000 && inserted.length() > 0)
+                inserted = "";
+            String gone = text.substring(offset, offset + removed);
+            doc.edit(offset, removed, inserted);
+            text.replace(offset, offset + removed, inserted);
+            assertEquals(text.toString(), doc.getText());
+            if (assertSameParse(text.toString(), doc.getResult(), "edit " + i)) {
+                good = text.toString();
+                broken = false;
+                continue;
+            }
+            errors++;
+            // a broken text is sometimes edited on, then goes back to the
+            // last one that parsed, by undoing the edit or replacing it all.
+            if (!broken && random.nextInt(4) == 0) {
+                broken = true;
+                continue;
+            }
+            if (broken)
+                doc.edit(0, text.length(), good);
+            else
+                doc.edit(offset, inserted.length(), gone);
+            text.replace(0, text.length(), good);
+            broken = false;
+            assertTrue(assertSameParse(good, doc.getResult(), "undo " + i));
+        }
+        assertTrue(errors > 100 && errors < 2_900, errors + " edits left errors.");
+    }
+
+    @Test
+    void editsReuseWhatTheyDontTouch() throws Exception {
+        var doc = new Document("a;\nb;\nc;\nd;\n", "<test>");
+        Stmt[] before = doc.getResult().getValue().body();
+        // the statement before is parsed again too, its last token could merge.
+        assertEquals(2, doc.edit(6, 1, "e + f").getValue());
+        Stmt[] after = doc.getResult().getValue().body();
+        assertEquals(4, after.length);
+        assertSame(before[0], after[0]);
+        assertNotSame(before[2], after[2]);
+        assertSame(before[3], after[3]);
+        assertSameParse("a;\nb;\ne + f;\nd;\n", doc.getResult(), "e + f");
+    }
+
+    @Test
+    void errorsClearOnTheNextEdit() throws Exception {
+        var doc = new Document("a;\nb;\n", "<test>");
+        assertTrue(doc.edit(3, 1, "+").hasError());
+        assertTrue(doc.getResult().hasError());
+        assertTrue(doc.edit(3, 1, "c").hasValue());
+        assertSameParse("a;\nc;\n", doc.getResult(), "c");
+    }
+
+    // false if the text doesn't parse, and the document says so too.
+    private static boolean assertSameParse(String text, Result<Program, Exception> actual, String message) throws Exception {
+        var expected = new Parser(text, "<test>").parseProgram();
+        assertEquals(expected.hasError(), actual.hasError(), () -> message + ": " + text);
+        if (expected.hasError())
+            return false;
+        assertEquals(AstPrinter.toString(expected.getValue()), AstPrinter.toString(actual.getValue()), message);
+        return true;
+    }
+}
@@ -0,0 +1,84 @@
+package src.parser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static src.parser.Node.*;
+
+/**
+ * A {@link ParseCache} hit reads what the parse would give, and an entry
+ * that's broken is a miss, never an error.
+ */
+class ParseCacheTest {
+    private static final String SOURCE = "x := [1 2 [3]] ** -y++;\n; { f(g(1), 2.5f)[i].z = !true; }\nnull ~^ p!;\n";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void hitsReadWhatWasParsed() throws Exception {
+        Path file = source(SOURCE);
+        var cache = new ParseCache(dir.resolve("cache"));
+        Program parsed = parse(cache, file);
+        Path entry = entry();
+        Program cached = parse(cache, file);
+        assertEquals(file.toString(), cached.source());
+        assertSameTree(parsed, cached);
+        assertEquals(Files.getLastModifiedTime(entry), Files.getLastModifiedTime(entry()));
+    }
+
+    @Test
+    void brokenEntriesAreMisses() throws Exception {
+        Path file = source(SOURCE);
+        var cache = new ParseCache(dir.resolve("cache"));
+        Program parsed = parse(cache, file);
+        Path entry = entry();
+        byte[] good = Files.readAllBytes(entry);
+        var random = new Random(15);
+        for (int i = 0; i < 500; i++) {
+            byte[] bad = good.clone();
+            if (i % 5 == 0)
+                bad = Arrays.copyOf(bad, 16 + random.nextInt(bad.length - 16));
+            else
+                for (int j = random.nextInt(4); j >= 0; j--)
+                    bad[16 + random.nextInt(bad.length - 16)] = (byte)random.nextInt();
+            Files.write(entry, bad);
+            assertTrue(cache.parse(file).hasValue(), "entry " + i);
+        }
+        // a miss stores the entry again.
+        Files.write(entry, new byte[0]);
+        assertSameTree(parsed, parse(cache, file));
+        assertArrayEquals(good, Files.readAllBytes(entry));
+    }
+
+    private Path source(String text) throws IOException {
+        return Files.writeString(dir.resolve("a.yb"), text);
+    }
+
+    private Path entry() throws IOException {
+        try (var entries = Files.list(dir.resolve("cache"))) {
+            return entries.filter(p -> p.toString().endsWith(".ast")).findFirst().orElseThrow();
+        }
+    }
+
+    private static Program parse(ParseCache cache, Path file) throws Exception {
+        var res = cache.parse(file);
+        if (res.hasError())
+            throw res.getError();
+        return res.getValue();
+    }
+
+    private static void assertSameTree(Program expected, Program actual) {
+        AstArena a = AstArena.of(expected), b = AstArena.of(actual);
+        assertEquals(a.size(), b.size());
+        for (int id = 0; id < a.size(); id++)
+            assertEquals(a.kind(id), b.kind(id), "node " + id);
+    }
+}